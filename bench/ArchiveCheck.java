@@ -0,0 +1,362 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Archival check for {@link Maintenance}: builds a mess with two years of closed monthly billing
+ * periods, times the dashboard, archives everything older than a year, and fails if the
+ * dashboard got slower, if any balance, report or running total changed, if an archived row
+ * is missing from the archive or the carry-forward totals, or if a backup taken afterwards
+ * does not match the live database.
+ *
+ *   java -cp bin:sqlite-jdbc.jar ArchiveCheck [members] [days]
+ */
+public class ArchiveCheck {
+
+    private static final int WARMUP = 200;
+    private static final int SAMPLES = 2_000;
+    private static final int RETENTION_DAYS = 365;
+
+    public static void main(String[] args) throws Exception {
+        int members = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 730;
+
+        Path directory = Files.createTempDirectory("meal_manager_archive");
+        Path dbFile = directory.resolve("meal_manager.db");
+        String url = "jdbc:sqlite:" + dbFile;
+        List<String> problems = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection(url)) {
+            SchemaMigrations.migrate(conn);
+            seed(conn, members, days);
+            check(conn, directory, members, problems);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+
+        if (!problems.isEmpty()) {
+            problems.forEach(problem -> System.out.println("FAILED: " + problem));
+            System.exit(1);
+        }
+        System.out.println("Archival kept every total, report and balance, and the dashboard stayed as fast.");
+    }
+
+    /**
+     * One meal per member and one expense per day for {@code days} days up to today, closed into
+     * monthly billing periods up to the end of last month.
+     */
+    private static void seed(Connection conn, int members, int days) throws SQLException {
+        LocalDate today = LocalDate.now();
+        LocalDate first = today.minusDays(days);
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement();
+             PreparedStatement users = conn.prepareStatement("INSERT INTO users (name, username, password) VALUES (?, ?, 'x')");
+             PreparedStatement memberStmt = conn.prepareStatement("INSERT INTO members (user_id, name, deposit, balance) VALUES (?, ?, 5000000, 5000000)");
+             PreparedStatement meals = conn.prepareStatement("INSERT INTO meals (member_id, meal_count, date) VALUES (?, ?, ?)");
+             PreparedStatement expenses = conn.prepareStatement("INSERT INTO expenses (description, amount, date) VALUES ('groceries', ?, ?)")) {
+            stmt.executeUpdate("UPDATE billing_periods SET start_date = '" + first + "' WHERE end_date IS NULL");
+            for (int member = 1; member <= members; member++) {
+                users.setString(1, "user" + member);
+                users.setString(2, "user" + member);
+                users.executeUpdate();
+                memberStmt.setInt(1, member + 1);
+                memberStmt.setString(2, "user" + member);
+                memberStmt.executeUpdate();
+            }
+            for (int day = 0; day <= days; day++) {
+                String date = first.plusDays(day).toString();
+                for (int member = 1; member <= members; member++) {
+                    meals.setInt(1, member);
+                    meals.setInt(2, 1 + (member + day) % 3);
+                    meals.setString(3, date);
+                    meals.addBatch();
+                }
+                meals.executeBatch();
+                expenses.setLong(1, (200 + day % 300) * Money.SCALE + day % Money.SCALE);
+                expenses.setString(2, date);
+                expenses.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+
+        for (YearMonth month = YearMonth.from(first); month.isBefore(YearMonth.from(today)); month = month.plusMonths(1)) {
+            BillingPeriods.closePeriod(conn, month.atEndOfMonth().toString());
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ANALYZE");
+        }
+    }
+
+    private static void check(Connection conn, Path directory, int members, List<String> problems) throws Exception {
+        String before = fingerprint(conn, members);
+        long[] rowsBefore = rowTotals(conn);
+        long[] memberMealsBefore = memberMeals(conn, members, false);
+        long pagesBefore = pragma(conn, "page_count");
+        LatencyHistogram legacyBefore = timeLegacyAggregates(conn);
+        LatencyHistogram dashboardBefore = timeDashboard(conn);
+
+        String cutoff = LocalDate.now().minusDays(RETENTION_DAYS).toString();
+        Maintenance.ArchiveResult result = Maintenance.archive(conn, cutoff);
+        System.out.printf("Archived %d meal and %d expense rows through %s, freed %d of %d pages%n",
+            result.mealRows, result.expenseRows, result.through, result.pagesFreed, pagesBefore);
+
+        if (result.mealRows == 0 || result.expenseRows == 0) {
+            problems.add("nothing was archived through " + cutoff);
+        }
+        long[] rowsAfter = rowTotals(conn);
+        long[] moved = {result.mealRows, result.meals, result.expenseRows, result.cost};
+        for (int i = 0; i < moved.length; i++) {
+            if (rowsAfter[i] + moved[i] != rowsBefore[i]) {
+                problems.add("row totals " + Arrays.toString(rowsAfter) + " plus archived " + Arrays.toString(moved)
+                    + " do not add up to " + Arrays.toString(rowsBefore));
+                break;
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT meal_rows, meals, expense_rows, cost FROM archived_totals WHERE id = 1");
+            rs.next();
+            long[] carried = {rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)};
+            if (!Arrays.equals(carried, moved)) {
+                problems.add("carry-forward row " + Arrays.toString(carried) + " but " + Arrays.toString(moved) + " archived");
+            }
+            rs = stmt.executeQuery("SELECT (SELECT COUNT(*) FROM meals WHERE date <= '" + result.through + "') + "
+                + "(SELECT COUNT(*) FROM expenses WHERE date <= '" + result.through + "')");
+            rs.next();
+            if (rs.getLong(1) != 0) {
+                problems.add(rs.getLong(1) + " rows dated on or before " + result.through + " are still live");
+            }
+        }
+        long[] memberMealsAfter = memberMeals(conn, members, true);
+        if (!Arrays.equals(memberMealsBefore, memberMealsAfter)) {
+            problems.add("live plus archived meals per member differ from the meals before archival");
+        }
+        checkArchive(result, problems);
+
+        problems.addAll(SummaryTables.check(conn));
+        problems.addAll(Reports.check(conn));
+        if (!fingerprint(conn, members).equals(before)) {
+            problems.add("the dashboard, balances or reports changed after archival");
+        }
+        if (pragma(conn, "auto_vacuum") != 2) {
+            problems.add("the database was not switched to incremental auto-vacuum");
+        }
+        if (pragma(conn, "page_count") >= pagesBefore) {
+            problems.add("the database did not shrink: " + pragma(conn, "page_count") + " pages, " + pagesBefore + " before");
+        }
+
+        LatencyHistogram legacyAfter = timeLegacyAggregates(conn);
+        LatencyHistogram dashboardAfter = timeDashboard(conn);
+        System.out.printf("%-36s %10s %10s%n", "", "p50 us", "p99 us");
+        print("all-history aggregates, before", legacyBefore);
+        print("all-history aggregates, after", legacyAfter);
+        print("dashboard summary + page, before", dashboardBefore);
+        print("dashboard summary + page, after", dashboardAfter);
+        long p99Before = dashboardBefore.getValueAtPercentile(99);
+        long p99After = dashboardAfter.getValueAtPercentile(99);
+        // Archival only shrinks the tables the dashboard does not read; allow for timer noise.
+        if (p99After > p99Before * 3 / 2 + 1_000_000) {
+            problems.add("dashboard p99 rose from " + p99Before / 1000 + " us to " + p99After / 1000 + " us after archival");
+        }
+
+        // A second run has nothing left to move, and discards a batch an interrupted run left behind.
+        try (Connection archive = DriverManager.getConnection("jdbc:sqlite:" + result.archiveFile);
+             Statement stmt = archive.createStatement()) {
+            stmt.executeUpdate("INSERT INTO archive_batches (kind, month, through_date, row_count, total, data) "
+                + "VALUES ('meals', '9999-12', '9999-12-31', 0, 0, x'')");
+        }
+        Maintenance.ArchiveResult again = Maintenance.archive(conn, cutoff);
+        if (again.mealRows + again.expenseRows != 0 || !again.through.equals(result.through)) {
+            problems.add("a second archival through " + cutoff + " moved " + (again.mealRows + again.expenseRows) + " rows");
+        }
+        try (Connection archive = DriverManager.getConnection("jdbc:sqlite:" + result.archiveFile);
+             Statement stmt = archive.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM archive_batches WHERE through_date > '" + result.through + "'")) {
+            rs.next();
+            if (rs.getLong(1) != 0) {
+                problems.add("the batch of an interrupted archival was not discarded");
+            }
+        }
+
+        // The open period still takes entries, and their rollups stay right.
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO meals (member_id, meal_count, date) VALUES (1, 2, date('now'))");
+            stmt.executeUpdate("DELETE FROM meals WHERE id = (SELECT MAX(id) FROM meals)");
+        }
+        problems.addAll(Reports.check(conn));
+
+        if (!Maintenance.routine(conn) || Maintenance.routine(conn)) {
+            problems.add("the maintenance routine did not run exactly once per interval");
+        }
+
+        Path backup = Maintenance.backup(conn, directory.resolve("backups"));
+        Path archiveBackup = backup.resolveSibling(backup.getFileName().toString().replace(".db", ".archive.db"));
+        if (!Files.exists(archiveBackup)) {
+            problems.add("the archive was not backed up with the database");
+        }
+        try (Connection copy = DriverManager.getConnection("jdbc:sqlite:" + backup);
+             Statement stmt = copy.createStatement()) {
+            ResultSet rs = stmt.executeQuery("PRAGMA integrity_check");
+            rs.next();
+            if (!rs.getString(1).equals("ok")) {
+                problems.add("backup integrity_check: " + rs.getString(1));
+            }
+            if (!Arrays.equals(rowTotals(copy), rowTotals(conn)) || !fingerprint(copy, members).equals(before)) {
+                problems.add("the backup does not match the live database");
+            }
+        }
+    }
+
+    /**
+     * Unpacks every batch and checks its rows against its header and the archival totals.
+     */
+    private static void checkArchive(Maintenance.ArchiveResult result, List<String> problems) throws SQLException, IOException {
+        long[] found = new long[4];
+        try (Connection archive = DriverManager.getConnection("jdbc:sqlite:" + result.archiveFile);
+             Statement stmt = archive.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT kind, month, row_count, total, data FROM archive_batches")) {
+            while (rs.next()) {
+                boolean meals = rs.getString("kind").equals("meals");
+                long rows = 0;
+                long total = 0;
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                        new GZIPInputStream(new ByteArrayInputStream(rs.getBytes("data"))), StandardCharsets.UTF_8))) {
+                    in.readLine();
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        String amount = line.split(",")[1];
+                        total += meals ? Long.parseLong(amount) : Money.parse(amount);
+                        rows++;
+                    }
+                }
+                if (rows != rs.getLong("row_count") || total != rs.getLong("total")) {
+                    problems.add("archive batch " + rs.getString("kind") + " " + rs.getString("month") + " holds " + rows
+                        + " rows totalling " + total + " but its header says " + rs.getLong("row_count") + " and " + rs.getLong("total"));
+                }
+                found[meals ? 0 : 2] += rows;
+                found[meals ? 1 : 3] += total;
+            }
+        }
+        long[] moved = {result.mealRows, result.meals, result.expenseRows, result.cost};
+        if (!Arrays.equals(found, moved)) {
+            problems.add("the archive holds " + Arrays.toString(found) + " but " + Arrays.toString(moved) + " were archived");
+        }
+    }
+
+    /**
+     * Everything a user can see: the summary, every member's balance, and reports over the
+     * whole history including the archived days.
+     */
+    private static String fingerprint(Connection conn, int members) throws SQLException {
+        MessSummary summary = MealRepository.loadSummary(conn);
+        StringBuilder sb = new StringBuilder();
+        sb.append(summary.getPeriodStart()).append(' ').append(summary.getTotalCost()).append(' ').append(summary.getTotalMeals())
+            .append(' ').append(summary.getMessBalance()).append('\n');
+        MemberPage page = MealRepository.loadPage(conn, "", MemberPage.SORT_NAME, true, summary.getMealRate(), 0, members);
+        for (int i = 0; i < page.size(); i++) {
+            sb.append(page.ids[i]).append(' ').append(page.meals[i]).append(' ')
+                .append(summary.balance(page.ids[i], page.deposits[i], page.carriedCosts[i])).append('\n');
+        }
+        String from = LocalDate.now().minusYears(5).toString();
+        String to = LocalDate.now().toString();
+        for (Reports.Kind kind : Reports.Kind.values()) {
+            for (Object[] row : Reports.run(conn, kind, from, to, 1).rows) {
+                sb.append(Arrays.toString(row)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static long[] rowTotals(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("""
+                SELECT (SELECT COUNT(*) FROM meals), (SELECT IFNULL(SUM(meal_count), 0) FROM meals),
+                       (SELECT COUNT(*) FROM expenses), (SELECT IFNULL(SUM(amount), 0) FROM expenses)
+                """)) {
+            rs.next();
+            return new long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)};
+        }
+    }
+
+    private static long[] memberMeals(Connection conn, int members, boolean withArchived) throws SQLException {
+        long[] meals = new long[members + 1];
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT member_id, SUM(meal_count) FROM meals GROUP BY member_id");
+            while (rs.next()) {
+                meals[rs.getInt(1)] += rs.getLong(2);
+            }
+            if (withArchived) {
+                rs = stmt.executeQuery("SELECT member_id, meals FROM archived_member_meals");
+                while (rs.next()) {
+                    meals[rs.getInt(1)] += rs.getLong(2);
+                }
+            }
+        }
+        return meals;
+    }
+
+    private static LatencyHistogram timeDashboard(Connection conn) throws SQLException {
+        return time(() -> {
+            MessSummary summary = MealRepository.loadSummary(conn);
+            MealRepository.loadPage(conn, "", MemberPage.SORT_NAME, true, summary.getMealRate(), 0, HomeTableModel.PAGE_SIZE);
+        });
+    }
+
+    /**
+     * The sums over every row that the dashboard used before it had running totals.
+     */
+    private static LatencyHistogram timeLegacyAggregates(Connection conn) throws SQLException {
+        return time(() -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeQuery("SELECT IFNULL(SUM(amount), 0) FROM expenses").next();
+                stmt.executeQuery("SELECT IFNULL(SUM(meal_count), 0) FROM meals").next();
+            }
+        });
+    }
+
+    private static LatencyHistogram time(MealManagerBenchmark.Task task) throws SQLException {
+        for (int i = 0; i < WARMUP; i++) {
+            task.run();
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < SAMPLES; i++) {
+            long started = System.nanoTime();
+            task.run();
+            histogram.record(System.nanoTime() - started);
+        }
+        return histogram;
+    }
+
+    private static void print(String name, LatencyHistogram histogram) {
+        System.out.printf("%-36s %10d %10d%n", name, histogram.getValueAtPercentile(50) / 1000, histogram.getValueAtPercentile(99) / 1000);
+    }
+
+    private static long pragma(Connection conn, String name) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
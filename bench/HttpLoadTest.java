@@ -0,0 +1,112 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Closed-loop load test for {@link MealHttpServer}. Each client thread sends a request, waits
+ * for the answer and sends the next, and the run reports requests per second with p50, p99 and
+ * max latency.
+ *
+ * Start the server first, then:
+ *   java -cp bin HttpLoadTest [baseUrl] [threads] [seconds] [writePercent]
+ *
+ * With a non-zero write percentage that share of requests adds a meal for member 1, so the
+ * database needs at least one member.
+ */
+public class HttpLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://127.0.0.1:8080";
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int writePercent = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        String token = System.getProperty("mealmanager.http.token");
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        HttpRequest read = HttpRequest.newBuilder(URI.create(baseUrl + "/api/members?limit=50")).GET().build();
+        HttpRequest.Builder writeBuilder = HttpRequest.newBuilder(URI.create(baseUrl + "/api/meals"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("{\"memberId\": 1, \"mealCount\": 1}"));
+        if (token != null) {
+            writeBuilder.header("Authorization", "Bearer " + token);
+        }
+        HttpRequest write = writeBuilder.build();
+
+        // A short warmup so JIT compilation and the statement caches are not in the numbers.
+        long warmupEnd = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        while (System.nanoTime() < warmupEnd) {
+            client.send(read, HttpResponse.BodyHandlers.discarding());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        Future<?>[] workers = new Future<?>[threads];
+        Recorder[] recorders = new Recorder[threads];
+        for (int t = 0; t < threads; t++) {
+            Recorder recorder = new Recorder();
+            recorders[t] = recorder;
+            workers[t] = pool.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    boolean isWrite = ThreadLocalRandom.current().nextInt(100) < writePercent;
+                    long start = System.nanoTime();
+                    HttpResponse<Void> response = client.send(isWrite ? write : read, HttpResponse.BodyHandlers.discarding());
+                    recorder.record(System.nanoTime() - start, response.statusCode() == 200);
+                }
+                return null;
+            });
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        pool.shutdown();
+
+        Recorder total = new Recorder();
+        for (Recorder recorder : recorders) {
+            total.merge(recorder);
+        }
+        long[] latencies = Arrays.copyOf(total.latencies, total.count);
+        Arrays.sort(latencies);
+        System.out.printf("%d threads, %d s, %d%% writes%n", threads, seconds, writePercent);
+        System.out.printf("  requests: %d (%d failed)%n", total.count, total.failures);
+        System.out.printf("  throughput: %.0f req/s%n", total.count / (double) seconds);
+        if (latencies.length > 0) {
+            System.out.printf("  latency p50: %.2f ms, p99: %.2f ms, max: %.2f ms%n",
+                percentile(latencies, 50), percentile(latencies, 99), latencies[latencies.length - 1] / 1e6);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static final class Recorder {
+        long[] latencies = new long[1024];
+        int count;
+        int failures;
+
+        void record(long nanos, boolean ok) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            if (!ok) {
+                failures++;
+            }
+        }
+
+        void merge(Recorder other) {
+            for (int i = 0; i < other.count; i++) {
+                record(other.latencies[i], true);
+            }
+            failures += other.failures;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crash-recovery check for the {@link EventJournal}: starts a child JVM that writes meal and
+ * deposit entries from several threads and prints the sequence number of every acknowledged
+ * entry, kills it with SIGKILL part-way through, then reopens the database and fails if any
+ * acknowledged entry is missing, if the log and the ledger disagree, or if the running totals
+ * no longer match the raw rows.
+ *
+ *   java -cp bin:sqlite-jdbc.jar JournalCrashCheck [rounds]
+ */
+public class JournalCrashCheck {
+
+    private static final int MEMBERS = 10;
+    private static final long DEPOSIT = 150;
+    // Fewer acknowledged entries than this means the child could not write, not that it survived.
+    private static final int MIN_ACKNOWLEDGED = Integer.getInteger("check.min.acknowledged", 100);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("child")) {
+            child(args[1]);
+            return;
+        }
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+        File dbFile = File.createTempFile("meal_manager_crash", ".db");
+        dbFile.delete();
+        String url = "jdbc:sqlite:" + dbFile.getPath();
+        List<String> problems = new ArrayList<>();
+        try {
+            try (Connection conn = DriverManager.getConnection(url)) {
+                SchemaMigrations.migrate(conn);
+                seed(conn);
+            }
+
+            Set<Long> acknowledged = new HashSet<>();
+            for (int round = 1; round <= rounds; round++) {
+                int before = acknowledged.size();
+                crashChild(dbFile, acknowledged, 500 + round * 300L);
+                System.out.println("Round " + round + ": child killed after " + (acknowledged.size() - before) + " acknowledged entries");
+            }
+
+            if (acknowledged.size() < MIN_ACKNOWLEDGED) {
+                problems.add("only " + acknowledged.size() + " entries were acknowledged, fewer than " + MIN_ACKNOWLEDGED);
+            }
+            try (Connection conn = DriverManager.getConnection(url)) {
+                verify(conn, acknowledged, problems);
+            }
+        } finally {
+            dbFile.delete();
+            new File(dbFile.getPath() + "-wal").delete();
+            new File(dbFile.getPath() + "-shm").delete();
+        }
+
+        if (!problems.isEmpty()) {
+            problems.forEach(problem -> System.out.println("FAILED: " + problem));
+            System.exit(1);
+        }
+        System.out.println("Every acknowledged entry survived the crashes and the totals are consistent.");
+    }
+
+    private static void crashChild(File dbFile, Set<Long> acknowledged, long runMillis) throws Exception {
+        Process process = new ProcessBuilder(
+            ProcessHandle.current().info().command().orElse("java"),
+            "-cp", System.getProperty("java.class.path"),
+            JournalCrashCheck.class.getName(), "child", dbFile.getPath())
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+
+        Thread reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("ack ")) {
+                        synchronized (acknowledged) {
+                            acknowledged.add(Long.parseLong(line.substring(4)));
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                // The pipe breaks when the child is killed.
+            }
+        });
+        reader.start();
+
+        Thread.sleep(runMillis);
+        process.destroyForcibly();
+        process.waitFor(10, TimeUnit.SECONDS);
+        reader.join();
+    }
+
+    /**
+     * Writes entries until killed. A sequence number is printed only after its future has
+     * completed, i.e. after the entry is durable.
+     */
+    private static void child(String dbPath) throws Exception {
+        ConnectionPool pool = new ConnectionPool("jdbc:sqlite:" + dbPath, 4);
+        EventJournal journal = new EventJournal(pool::openDedicated);
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            new Thread(() -> {
+                for (int i = 0; ; i++) {
+                    int memberId = 1 + (thread + i) % MEMBERS;
+                    EventJournal.Event event = i % 2 == 0
+                        ? EventJournal.Event.meal(memberId, 1, null)
+                        : EventJournal.Event.deposit(memberId, DEPOSIT);
+                    long seq = journal.submit(event).join();
+                    synchronized (System.out) {
+                        System.out.println("ack " + seq);
+                        System.out.flush();
+                    }
+                }
+            }).start();
+        }
+        Thread.currentThread().join();
+    }
+
+    private static void seed(Connection conn) throws SQLException {
+        try (PreparedStatement users = conn.prepareStatement("INSERT INTO users (name, username, password) VALUES (?, ?, 'x')");
+             PreparedStatement members = conn.prepareStatement("INSERT INTO members (user_id, name, deposit, balance) VALUES (?, ?, 0, 0)")) {
+            for (int member = 1; member <= MEMBERS; member++) {
+                users.setString(1, "user" + member);
+                users.setString(2, "user" + member);
+                users.executeUpdate();
+                members.setInt(1, member + 1);
+                members.setString(2, "user" + member);
+                members.executeUpdate();
+            }
+        }
+    }
+
+    private static void verify(Connection conn, Set<Long> acknowledged, List<String> problems) throws SQLException {
+        Set<Long> applied = new HashSet<>();
+        long mealEvents = 0;
+        long depositEvents = 0;
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT seq, kind FROM event_log WHERE status = 'applied'");
+            while (rs.next()) {
+                applied.add(rs.getLong("seq"));
+                if (rs.getString("kind").equals("meal")) {
+                    mealEvents++;
+                } else {
+                    depositEvents++;
+                }
+            }
+
+            for (long seq : acknowledged) {
+                if (!applied.contains(seq)) {
+                    problems.add("acknowledged entry " + seq + " is missing from event_log");
+                }
+            }
+
+            rs = stmt.executeQuery("SELECT COUNT(*) FROM meals");
+            rs.next();
+            if (rs.getLong(1) != mealEvents) {
+                problems.add(rs.getLong(1) + " meal rows but " + mealEvents + " applied meal entries");
+            }
+            rs = stmt.executeQuery("SELECT IFNULL(SUM(deposit), 0) FROM members");
+            rs.next();
+            if (rs.getLong(1) != depositEvents * DEPOSIT) {
+                problems.add("deposits sum to " + rs.getLong(1) + " but " + depositEvents + " deposit entries were applied");
+            }
+            rs = stmt.executeQuery("PRAGMA integrity_check");
+            rs.next();
+            if (!rs.getString(1).equals("ok")) {
+                problems.add("integrity_check: " + rs.getString(1));
+            }
+        }
+        problems.addAll(SummaryTables.check(conn));
+        problems.addAll(Reports.check(conn));
+        System.out.println(acknowledged.size() + " acknowledged, " + applied.size() + " applied entries in event_log");
+    }
+}
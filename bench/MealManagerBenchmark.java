@@ -0,0 +1,559 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput benchmarks for the database paths used by the GUI, run against synthetic databases
+ * of several sizes. Each group of scenarios runs on its own copy of the seeded database, so
+ * the write scenarios do not grow the database the others read. Each scenario is warmed up and
+ * then measured for a fixed time, and the results are written as JSON so runs can be compared.
+ *
+ * Run with the SQLite JDBC driver on the classpath:
+ *   javac -d bin src/*.java bench/*.java
+ *   java -cp bin:sqlite-jdbc.jar MealManagerBenchmark [--json results.json] [mealRows ...]
+ *
+ * The default sizes are 100, 10,000 and 1,000,000 meal rows. The warmup and measurement time
+ * per scenario can be changed with {@code -Dbench.warmup.ms} and {@code -Dbench.measure.ms}.
+ */
+public class MealManagerBenchmark {
+
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmup.ms", 500);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measure.ms", 2_000);
+
+    private static final String LEGACY_MEMBER_JOIN =
+        "SELECT m.name, m.deposit, m.balance, IFNULL(SUM(ml.meal_count), 0) AS meals FROM members m " +
+        "LEFT JOIN meals ml ON m.id = ml.member_id GROUP BY m.id";
+
+    private static final List<Result> results = new ArrayList<>();
+    private static int currentRows;
+
+    public static void main(String[] args) throws Exception {
+        Path jsonFile = Path.of("bench-results.json");
+        List<Integer> sizes = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--json")) {
+                jsonFile = Path.of(args[++i]);
+            } else {
+                sizes.add(Integer.parseInt(args[i].replace("_", "")));
+            }
+        }
+        if (sizes.isEmpty()) {
+            sizes = List.of(100, 10_000, 1_000_000);
+        }
+
+        for (int mealRows : sizes) {
+            File seeded = File.createTempFile("meal_manager_bench", ".db");
+            seeded.delete();
+            currentRows = mealRows;
+            try {
+                long start = System.nanoTime();
+                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + seeded.getPath())) {
+                    SchemaMigrations.migrate(conn);
+                    seed(conn, mealRows);
+                }
+                System.out.printf("%n== %,d meal rows (seeded in %.1f s) ==%n", mealRows, (System.nanoTime() - start) / 1e9);
+
+                // Every group gets its own copy, so rows written by one never reach the next.
+                onCopy(seeded, MealManagerBenchmark::benchmarkConnectionPaths);
+                onCopy(seeded, (dbFile, url) -> benchmarkDashboard(url));
+                onCopy(seeded, (dbFile, url) -> benchmarkReports(url));
+                onCopy(seeded, (dbFile, url) -> benchmarkMealInserts(url));
+                onCopy(seeded, (dbFile, url) -> benchmarkJournal(url));
+                if (mealRows == sizes.get(0)) {
+                    // Sign-in and simulation cost do not depend on the database size.
+                    onCopy(seeded, (dbFile, url) -> benchmarkLogin(url));
+                    onCopy(seeded, (dbFile, url) -> benchmarkForecast(url));
+                }
+            } finally {
+                delete(seeded);
+            }
+        }
+
+        writeJson(jsonFile);
+        System.out.println();
+        System.out.println("Results written to " + jsonFile);
+    }
+
+    interface Group {
+        void run(File dbFile, String url) throws Exception;
+    }
+
+    /**
+     * Runs a group of scenarios against a fresh copy of the seeded database.
+     */
+    private static void onCopy(File seeded, Group group) throws Exception {
+        File copy = File.createTempFile("meal_manager_bench", ".db");
+        try {
+            Files.copy(seeded.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            group.run(copy, "jdbc:sqlite:" + copy.getPath());
+        } finally {
+            delete(copy);
+        }
+    }
+
+    private static void delete(File dbFile) {
+        dbFile.delete();
+        new File(dbFile.getPath() + "-wal").delete();
+        new File(dbFile.getPath() + "-shm").delete();
+    }
+
+    /**
+     * Seeds members, users and expenses in proportion to the requested number of meal rows. Dates
+     * start at today so every row falls in the open billing period.
+     */
+    static void seed(Connection conn, int mealRows) throws SQLException {
+        int members = Math.max(10, Math.min(500, mealRows / 50));
+        int expenses = Math.max(10, mealRows / 100);
+
+        conn.setAutoCommit(false);
+        try (PreparedStatement users = conn.prepareStatement("INSERT INTO users (name, username, password) VALUES (?, ?, 'x')");
+             PreparedStatement memberStmt = conn.prepareStatement("INSERT INTO members (user_id, name, deposit, balance) VALUES (?, ?, 100000, 100000)");
+             PreparedStatement meals = conn.prepareStatement("INSERT INTO meals (member_id, meal_count, date) VALUES (?, ?, date('now', '+' || ? || ' days'))");
+             PreparedStatement expenseStmt = conn.prepareStatement("INSERT INTO expenses (description, amount, date) VALUES ('groceries', ?, date('now', '+' || ? || ' days'))")) {
+            for (int member = 1; member <= members; member++) {
+                users.setString(1, "user" + member);
+                users.setString(2, "user" + member);
+                users.executeUpdate();
+                memberStmt.setInt(1, member + 1);
+                memberStmt.setString(2, "user" + member);
+                memberStmt.executeUpdate();
+            }
+            for (int row = 0; row < mealRows; row++) {
+                meals.setInt(1, row % members + 1);
+                meals.setInt(2, 1 + row % 3);
+                meals.setInt(3, row / members % 28);
+                meals.addBatch();
+                if (row % 10_000 == 9_999) {
+                    meals.executeBatch();
+                }
+            }
+            meals.executeBatch();
+            for (int row = 0; row < expenses; row++) {
+                expenseStmt.setLong(1, (100 + row % 400) * Money.SCALE);
+                expenseStmt.setInt(2, row % 28);
+                expenseStmt.addBatch();
+            }
+            expenseStmt.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ANALYZE");
+        }
+    }
+
+    private static void benchmarkConnectionPaths(File dbFile, String url) throws SQLException {
+        run("open-per-call login", () -> {
+            // Mirrors the old initializeDatabase(): probe the file, then open a fresh connection.
+            dbFile.exists();
+            try (Connection conn = DriverManager.getConnection(url)) {
+                login(conn);
+            }
+        });
+
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            run("pooled login", () -> {
+                try (Connection conn = pool.getConnection()) {
+                    login(conn);
+                }
+            });
+        }
+
+        // The same path without the statement timing proxies, to show what instrumentation costs.
+        Metrics metrics = Metrics.getInstance();
+        metrics.setEnabled(false);
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            run("pooled login, uninstrumented", () -> {
+                try (Connection conn = pool.getConnection()) {
+                    login(conn);
+                }
+            });
+        } finally {
+            metrics.setEnabled(true);
+        }
+    }
+
+    private static void benchmarkDashboard(String url) throws SQLException {
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            run("legacy dashboard aggregates", () -> {
+                // The original showHomePage sequence: three full-table sums and the member join.
+                try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+                    drain(stmt.executeQuery("SELECT IFNULL(SUM(amount), 0) FROM expenses"));
+                    drain(stmt.executeQuery("SELECT IFNULL(SUM(meal_count), 0) FROM meals"));
+                    drain(stmt.executeQuery("SELECT IFNULL(SUM(deposit), 0) FROM members"));
+                    drain(stmt.executeQuery(LEGACY_MEMBER_JOIN));
+                }
+            });
+
+            run("members/meals group by join", () -> {
+                try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+                    drain(stmt.executeQuery(LEGACY_MEMBER_JOIN));
+                }
+            });
+
+            run("dashboard summary + first page", () -> {
+                try (Connection conn = pool.getConnection()) {
+                    MessSummary summary = MealRepository.loadSummary(conn);
+                    MealRepository.loadPage(conn, "", MemberPage.SORT_NAME, true, summary.getMealRate(), 0, HomeTableModel.PAGE_SIZE);
+                }
+            });
+
+            Ledger.Snapshot snapshot;
+            try (Connection conn = pool.getConnection()) {
+                snapshot = Ledger.load(conn);
+            }
+            run("ledger snapshot summary + first page", () -> {
+                snapshot.summary();
+                snapshot.page("", MemberPage.SORT_NAME, true, 0, HomeTableModel.PAGE_SIZE);
+            });
+            run("ledger snapshot filtered by balance", () -> {
+                snapshot.page("user1", MemberPage.SORT_BALANCE, false, 0, HomeTableModel.PAGE_SIZE);
+            });
+        }
+    }
+
+    private static void benchmarkMealInserts(String url) throws SQLException {
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            int members;
+            try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM members")) {
+                rs.next();
+                members = rs.getInt(1);
+            }
+            int[] memberIds = new int[members];
+            for (int i = 0; i < members; i++) {
+                memberIds[i] = i + 1;
+            }
+
+            int[] next = {0};
+            run("single meal insert", () -> {
+                // The old Add Meal path: one connection and one autocommit insert per entry.
+                try (Connection conn = pool.getConnection(); PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO meals (member_id, meal_count, date) VALUES (?, ?, date('now'));")) {
+                    stmt.setInt(1, memberIds[next[0]++ % members]);
+                    stmt.setInt(2, 3);
+                    stmt.executeUpdate();
+                }
+            });
+
+            // The Bulk Meal Entry path: one journal submission with a meal event per member.
+            String today = LocalDate.now().toString();
+            EventJournal.Event[] bulk = new EventJournal.Event[members];
+            for (int i = 0; i < members; i++) {
+                bulk[i] = EventJournal.Event.meal(memberIds[i], 3, today);
+            }
+            EventJournal journal = new EventJournal(pool::openDedicated);
+            try {
+                run("journaled bulk meal entry (per row)", members, () -> journal.submitAll(bulk).join());
+            } finally {
+                journal.close();
+            }
+        }
+    }
+
+    /**
+     * Concurrent durable deposits: every writer waits for its entry to reach the disk. The
+     * autocommit path commits each update on its own with {@code synchronous = FULL}; the journal
+     * group-commits whatever the writers queued together.
+     */
+    private static void benchmarkJournal(String url) throws Exception {
+        int writers = 8;
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            runConcurrent("autocommit deposits x" + writers, writers, () -> {
+                try (Connection conn = pool.getConnection()) {
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute("PRAGMA synchronous = FULL");
+                    }
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "UPDATE members SET deposit = deposit + ?, balance = balance + ? WHERE id = ?")) {
+                        stmt.setLong(1, 100);
+                        stmt.setLong(2, 100);
+                        stmt.setInt(3, 1);
+                        stmt.executeUpdate();
+                    }
+                }
+            });
+
+            EventJournal journal = new EventJournal(pool::openDedicated);
+            try {
+                runConcurrent("journaled deposits x" + writers, writers,
+                    () -> journal.submit(EventJournal.Event.deposit(1, 100)).join());
+            } finally {
+                journal.close();
+            }
+        }
+    }
+
+    /**
+     * Date-range reports over the whole seeded range, from the daily rollups and, for
+     * comparison, the same weekly totals computed from the raw rows.
+     */
+    private static void benchmarkReports(String url) throws SQLException {
+        String from = LocalDate.now().toString();
+        String to = LocalDate.now().plusDays(60).toString();
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            run("raw weekly meal rate", () -> {
+                try (Connection conn = pool.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement("""
+                        SELECT week, SUM(meals), SUM(cost) FROM (
+                            SELECT date(date, 'weekday 0', '-6 days') AS week, meal_count AS meals, 0 AS cost
+                            FROM meals WHERE date BETWEEN ?1 AND ?2
+                            UNION ALL
+                            SELECT date(date, 'weekday 0', '-6 days'), 0, amount FROM expenses WHERE date BETWEEN ?1 AND ?2
+                        ) GROUP BY week
+                        """)) {
+                    stmt.setString(1, from);
+                    stmt.setString(2, to);
+                    drain(stmt.executeQuery());
+                }
+            });
+            for (Reports.Kind kind : Reports.Kind.values()) {
+                run("rollup " + kind.name().toLowerCase(), () -> {
+                    try (Connection conn = pool.getConnection()) {
+                        Reports.run(conn, kind, from, to, 1);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Loading a forecast history from the database, then a baseline and a what-if simulation
+     * over synthetic histories of 100, 300 and 1,000 members with half a month behind them and
+     * half ahead.
+     */
+    private static void benchmarkForecast(String url) throws SQLException {
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            run("forecast history load", () -> {
+                try (Connection conn = pool.getConnection()) {
+                    Forecast.load(conn, Ledger.load(conn), LocalDate.now(), LocalDate.now().plusDays(15));
+                }
+            });
+        }
+
+        Random random = new Random(1);
+        for (int members : new int[]{100, 300, 1_000}) {
+            int days = 15;
+            int[] ids = new int[members];
+            String[] names = new String[members];
+            long[] deposits = new long[members];
+            long[] mealsSoFar = new long[members];
+            int[][] dailyMeals = new int[members][days];
+            long[] dailyCosts = new long[days];
+            long totalMeals = 0;
+            long totalCost = 0;
+            for (int m = 0; m < members; m++) {
+                ids[m] = m + 1;
+                names[m] = "user" + (m + 1);
+                deposits[m] = 300_000;
+                for (int d = 0; d < days; d++) {
+                    dailyMeals[m][d] = random.nextInt(4);
+                    mealsSoFar[m] += dailyMeals[m][d];
+                }
+                totalMeals += mealsSoFar[m];
+            }
+            for (int d = 0; d < days; d += 3) {
+                dailyCosts[d] = (50 + random.nextInt(100)) * members * (long) Money.SCALE;
+                totalCost += dailyCosts[d];
+            }
+            Forecast.History history = new Forecast.History(LocalDate.now().toString(), LocalDate.now().plusDays(days).toString(),
+                days, 1, ids, names, deposits, new long[members], mealsSoFar, dailyMeals, dailyCosts, totalCost, totalMeals);
+            Forecast.Scenario whatIf = new Forecast.Scenario(3, 1, 1.1);
+            run("forecast " + members + " members", () -> Forecast.simulate(history, Forecast.Scenario.BASELINE, Forecast.DEFAULT_TRIALS));
+            run("forecast what-if " + members + " members", () -> Forecast.simulate(history, whatIf, Forecast.DEFAULT_TRIALS));
+        }
+    }
+
+    private static void login(Connection conn) throws SQLException {
+        MealRepository.findCredentials(conn, "admin");
+    }
+
+    /**
+     * Sign-in cost at several PBKDF2 iteration counts, including the configured one: the
+     * credential lookup on a pooled connection followed by verification. Also times a wrong
+     * password and an unknown username, which must cost the same as a success, and the full
+     * {@link MealRepository#login} round trip, which fails the run if the sign-in is refused.
+     */
+    private static void benchmarkLogin(String url) throws SQLException {
+        SortedSet<Integer> costs = new TreeSet<>(List.of(100_000, 310_000, 600_000, Passwords.ITERATIONS));
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            for (int iterations : costs) {
+                String hash = Passwords.hash("password123", iterations);
+                run("login pbkdf2 " + iterations, () -> {
+                    try (Connection conn = pool.getConnection()) {
+                        MealRepository.findCredentials(conn, "admin");
+                    }
+                    Passwords.verify("password123", hash);
+                });
+            }
+            // The whole asynchronous sign-in the GUI makes, through the repository's own executor.
+            MealRepository repository = MealRepository.open("bench", 2, pool);
+            try {
+                run("login round trip", () -> {
+                    if (repository.login("admin", "password123").join() == null) {
+                        throw new SQLException("The default admin could not sign in.");
+                    }
+                });
+            } finally {
+                repository.close();
+            }
+            String hash = Passwords.hash("password123");
+            run("login wrong password", () -> Passwords.verify("wrong", hash));
+            run("login unknown username", () -> {
+                try (Connection conn = pool.getConnection()) {
+                    MealRepository.findCredentials(conn, "nobody");
+                }
+                Passwords.verify("password123", null);
+            });
+        }
+    }
+
+    private static void drain(ResultSet rs) throws SQLException {
+        try (rs) {
+            while (rs.next()) {
+                rs.getObject(1);
+            }
+        }
+    }
+
+    static void run(String name, Task task) throws SQLException {
+        run(name, 1, task);
+    }
+
+    /**
+     * Runs the task repeatedly for the warmup period, then for the measurement period, and
+     * records the result. {@code rowsPerCall} scales the reported rate for tasks that do several
+     * operations per call.
+     */
+    static void run(String name, int rowsPerCall, Task task) throws SQLException {
+        long warmupEnd = System.nanoTime() + WARMUP_MILLIS * 1_000_000;
+        while (System.nanoTime() < warmupEnd) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        long end = start + MEASURE_MILLIS * 1_000_000;
+        long calls = 0;
+        long now;
+        do {
+            task.run();
+            calls++;
+            now = System.nanoTime();
+        } while (now < end);
+        report(name, calls * rowsPerCall, now - start);
+    }
+
+    /**
+     * Runs the task on {@code threads} threads at once for the warmup and measurement periods
+     * and records the combined rate.
+     */
+    static void runConcurrent(String name, int threads, Task task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            long measureStart = start + WARMUP_MILLIS * 1_000_000;
+            long end = measureStart + MEASURE_MILLIS * 1_000_000;
+            AtomicLong operations = new AtomicLong();
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(pool.submit(() -> {
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        task.run();
+                        if (now >= measureStart) {
+                            operations.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            report(name, operations.get(), System.nanoTime() - measureStart);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static void report(String name, long operations, long elapsedNanos) {
+        Result result = new Result(name, currentRows, operations, elapsedNanos);
+        results.add(result);
+        System.out.printf("%-32s %12.1f ops/s %12.1f us/op%n", name, result.opsPerSecond(), result.microsPerOp());
+    }
+
+    private static void writeJson(Path file) throws IOException {
+        StringBuilder rows = new StringBuilder("[");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            if (i > 0) {
+                rows.append(",\n  ");
+            }
+            rows.append(Json.object()
+                .field("benchmark", result.name)
+                .field("mealRows", result.mealRows)
+                .field("operations", result.operations)
+                .field("opsPerSecond", result.opsPerSecond())
+                .field("usPerOp", result.microsPerOp())
+                .end());
+        }
+        rows.append(']');
+        String json = Json.object()
+            .field("timestamp", Instant.now().toString())
+            .field("javaVersion", System.getProperty("java.version"))
+            .field("warmupMillis", WARMUP_MILLIS)
+            .field("measureMillis", MEASURE_MILLIS)
+            .raw("results", rows.toString())
+            .end();
+        Files.writeString(file, json + "\n", StandardCharsets.UTF_8);
+    }
+
+    private static final class Result {
+        final String name;
+        final int mealRows;
+        final long operations;
+        final long elapsedNanos;
+
+        Result(String name, int mealRows, long operations, long elapsedNanos) {
+            this.name = name;
+            this.mealRows = mealRows;
+            this.operations = operations;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        double opsPerSecond() {
+            return operations / (elapsedNanos / 1e9);
+        }
+
+        double microsPerOp() {
+            return elapsedNanos / 1e3 / operations;
+        }
+    }
+
+    interface Task {
+        void run() throws SQLException;
+    }
+}
@@ -0,0 +1,72 @@
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Query-plan regression check: builds a fresh database through the migrations, seeds it, and
+ * fails if any of the hot queries falls back to a full scan of meals or expenses.
+ *
+ *   java -cp bin:sqlite-jdbc.jar QueryPlanCheck
+ */
+public class QueryPlanCheck {
+
+    public static void main(String[] args) throws Exception {
+        File dbFile = File.createTempFile("meal_manager_plan", ".db");
+        dbFile.delete();
+
+        List<String> problems;
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getPath())) {
+            SchemaMigrations.migrate(conn);
+            seed(conn);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ANALYZE");
+            }
+            problems = SchemaMigrations.checkQueryPlans(conn);
+        } finally {
+            dbFile.delete();
+        }
+
+        if (!problems.isEmpty()) {
+            problems.forEach(problem -> System.out.println("FULL SCAN: " + problem));
+            System.exit(1);
+        }
+        System.out.println("All " + SchemaMigrations.HOT_QUERIES.length + " hot queries use an index.");
+    }
+
+    private static void seed(Connection conn) throws Exception {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            // A fresh database's open period starts today and the triggers reject earlier dates, so
+            // move its start back before seeding four months that straddle the queries' 2024 ranges.
+            stmt.executeUpdate("UPDATE billing_periods SET start_date = '2023-11-01' WHERE end_date IS NULL");
+        }
+        try (PreparedStatement users = conn.prepareStatement("INSERT INTO users (name, username, password) VALUES (?, ?, 'x')");
+             PreparedStatement members = conn.prepareStatement("INSERT INTO members (user_id, name, deposit, balance) VALUES (?, ?, 1000, 1000)");
+             PreparedStatement meals = conn.prepareStatement("INSERT INTO meals (member_id, meal_count, date) VALUES (?, 3, date('2023-11-01', '+' || ? || ' days'))");
+             PreparedStatement expenses = conn.prepareStatement("INSERT INTO expenses (description, amount, date) VALUES ('groceries', 250, date('2023-11-01', '+' || ? || ' days'))")) {
+            for (int member = 1; member <= 50; member++) {
+                users.setString(1, "user" + member);
+                users.setString(2, "user" + member);
+                users.executeUpdate();
+                members.setInt(1, member + 1);
+                members.setString(2, "user" + member);
+                members.executeUpdate();
+                for (int day = 0; day < 120; day++) {
+                    meals.setInt(1, member);
+                    meals.setInt(2, day);
+                    meals.addBatch();
+                }
+                meals.executeBatch();
+            }
+            for (int day = 0; day < 120; day++) {
+                expenses.setInt(1, day);
+                expenses.executeUpdate();
+            }
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Smoke check of the real data paths: runs every {@link MealService} call the GUI and the HTTP
+ * API make, twice, against a fresh database through a small {@link ConnectionPool}, so cached
+ * statements are handed out again on later leases. Exits with a non-zero status if any call
+ * fails or leaves a connection checked out.
+ *
+ *   java -cp bin:sqlite-jdbc.jar RepositoryCheck
+ */
+public class RepositoryCheck {
+
+    private static final List<String> problems = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        File dbFile = File.createTempFile("meal_manager_repository", ".db");
+        dbFile.delete();
+        Path csv = Files.createTempFile("meal_manager_repository", ".csv");
+        ConnectionPool pool = new ConnectionPool("jdbc:sqlite:" + dbFile.getPath(), 2);
+        MealRepository repository = MealRepository.open("check", 2, pool);
+        try {
+            try (Connection conn = pool.getConnection()) {
+                SchemaMigrations.migrate(conn);
+            }
+            MealService service = new MealService(repository);
+            for (int round = 1; round <= 2; round++) {
+                run(service, round, csv);
+            }
+            checkOtherWriter(service, dbFile);
+            // A sign-in that upgrades a password hash finishes in the background.
+            for (int i = 0; i < 50 && pool.getActiveConnections() != 0; i++) {
+                Thread.sleep(100);
+            }
+            if (pool.getActiveConnections() != 0) {
+                problems.add(pool.getActiveConnections() + " connections are still checked out");
+            }
+        } finally {
+            repository.close();
+            pool.close();
+            Files.deleteIfExists(csv);
+            dbFile.delete();
+            new File(dbFile.getPath() + "-wal").delete();
+            new File(dbFile.getPath() + "-shm").delete();
+        }
+
+        if (!problems.isEmpty()) {
+            problems.forEach(problem -> System.out.println("FAILED: " + problem));
+            System.exit(1);
+        }
+        System.out.println("Every repository and service call succeeded through the pool.");
+    }
+
+    private static void run(MealService service, int round, Path csv) {
+        String username = "checker" + round;
+        call("register", () -> service.register("Checker " + round, username, "secret"));
+        User user = call("login", () -> service.login(username, "secret"));
+        if (user == null) {
+            problems.add("round " + round + ": login with the right password was refused");
+        }
+        if (call("login with a wrong password", () -> service.login(username, "wrong")) != null) {
+            problems.add("round " + round + ": login with a wrong password succeeded");
+        }
+        if (call("admin login", () -> service.login("admin", "password123")) == null) {
+            problems.add("round " + round + ": the default admin could not sign in");
+        }
+
+        List<MealRepository.Choice> users = call("find users without membership", service::findUsersWithoutMembership);
+        if (users == null || users.isEmpty()) {
+            problems.add("round " + round + ": the new user is not offered for membership");
+            return;
+        }
+        MealRepository.Choice newUser = users.get(users.size() - 1);
+        Integer memberId = call("add member", () -> service.addMember(newUser.id, newUser.name, 10_000));
+        if (memberId == null) {
+            return;
+        }
+        call("add meal", () -> service.addMeal(memberId, 2));
+        call("add meals", () -> service.addMeals(LocalDate.now().toString(), new int[]{memberId}, new int[]{1}));
+        call("add deposit", () -> service.addDeposit(memberId, 5_000));
+        try {
+            service.addMeal(Integer.MAX_VALUE, 1).join();
+            problems.add("round " + round + ": a meal for an unknown member was accepted");
+        } catch (RuntimeException e) {
+            // Expected: the journal rejects it.
+        }
+        call("add expense", () -> service.addExpense("groceries", 1_250));
+        try {
+            service.closePeriod(LocalDate.now().plusDays(1).toString()).join();
+            problems.add("round " + round + ": a period was closed after today");
+        } catch (RuntimeException e) {
+            // Expected: the service rejects it before touching the database.
+        }
+
+        MessSummary summary = call("summary", service::summary);
+        if (summary != null && summary.getTotalMeals() != 3L * round) {
+            problems.add("round " + round + ": summary has " + summary.getTotalMeals() + " meals, expected " + 3 * round);
+        }
+        call("members", () -> service.members("", MemberPage.SORT_BALANCE, false, 0, 50));
+        call("count members", () -> service.countMembers("Checker"));
+        call("list members", service::listMembers);
+        call("report", () -> service.report(Reports.Kind.DAILY, LocalDate.now().minusDays(7).toString(),
+            LocalDate.now().toString(), memberId));
+        call("forecast history", () -> service.forecastHistory(LocalDate.now().plusDays(7).toString()));
+        call("export CSV", () -> service.exportCsv(CsvTransfer.Kind.MEALS, csv));
+        call("resync", service::resync);
+    }
+
+    /**
+     * Writes through a second pool and service, as another process would, and expects the first
+     * service's ledger to notice once its change check is due.
+     */
+    private static void checkOtherWriter(MealService service, File dbFile) throws Exception {
+        MessSummary before = call("summary before another writer", service::summary);
+        ConnectionPool otherPool = new ConnectionPool("jdbc:sqlite:" + dbFile.getPath(), 1);
+        MealRepository other = MealRepository.open("check-other", 1, otherPool);
+        try {
+            call("expense from another writer", () -> new MealService(other).addExpense("gas", 700));
+        } finally {
+            other.close();
+            otherPool.close();
+        }
+        Thread.sleep(Long.getLong("mealmanager.ledger.check.ms", 250) + 50);
+        MessSummary after = call("summary after another writer", service::summary);
+        if (before != null && after != null && after.totalCost != before.totalCost + 700) {
+            problems.add("the ledger still shows a total cost of " + after.totalCost
+                + " after another writer added 700 to " + before.totalCost);
+        }
+    }
+
+    private static <T> T call(String name, Supplier<CompletableFuture<T>> call) {
+        try {
+            return call.get().get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            problems.add(name + ": " + cause);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+class AdminUser extends User {
+    public AdminUser(String username) {
+        super(username);
+    }
+
+    @Override
+    public String getRoleSpecificOptions() {
+        return "Admin Options: Manage Members, Add Expenses, Add Deposits.";
+    }
+}
@@ -0,0 +1,26 @@
+import javax.swing.SwingConstants;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/**
+ * Formats {@link Money} minor-unit columns with two decimals at paint time, so table models can
+ * hand out raw amounts instead of pre-formatted strings.
+ */
+public class AmountRenderer extends DefaultTableCellRenderer {
+
+    private final StringBuilder text = new StringBuilder(24);
+
+    public AmountRenderer() {
+        setHorizontalAlignment(SwingConstants.RIGHT);
+    }
+
+    @Override
+    protected void setValue(Object value) {
+        if (value instanceof Long) {
+            text.setLength(0);
+            Money.append(text, (Long) value);
+            setText(text.toString());
+        } else {
+            setText("");
+        }
+    }
+}
@@ -0,0 +1,223 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Monthly billing periods.
+ *
+ * Exactly one row of {@code billing_periods} is open ({@code end_date IS NULL}). The running
+ * totals only cover meals and expenses dated inside the open period. Closing a period freezes
+ * every member's meals, cost and balance into {@code period_snapshots}, and moves the cost into
+ * the {@code carried_cost} columns, so the dashboard never has to read rows from closed periods.
+ * Meals and expenses dated before the open period are rejected.
+ */
+public class BillingPeriods {
+
+    private static final String OPEN_PERIOD_START = "(SELECT start_date FROM billing_periods WHERE end_date IS NULL)";
+
+    private static final String[] SCHEMA = {
+        """
+        CREATE TABLE IF NOT EXISTS billing_periods (
+            id INTEGER PRIMARY KEY AUTOINCREMENT,
+            start_date DATE NOT NULL,
+            end_date DATE,
+            total_cost REAL,
+            total_meals INTEGER,
+            meal_rate REAL
+        );
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS period_snapshots (
+            period_id INTEGER NOT NULL,
+            member_id INTEGER NOT NULL,
+            meals INTEGER NOT NULL,
+            cost REAL NOT NULL,
+            deposit REAL NOT NULL,
+            balance REAL NOT NULL,
+            PRIMARY KEY (period_id, member_id),
+            FOREIGN KEY (period_id) REFERENCES billing_periods (id),
+            FOREIGN KEY (member_id) REFERENCES members (id)
+        );
+        """,
+        "CREATE INDEX IF NOT EXISTS idx_meals_date ON meals (date, member_id, meal_count)",
+        "ALTER TABLE mess_totals ADD COLUMN carried_cost REAL NOT NULL DEFAULT 0",
+        "ALTER TABLE member_totals ADD COLUMN carried_cost REAL NOT NULL DEFAULT 0",
+        """
+        INSERT INTO billing_periods (start_date)
+        SELECT IFNULL(MIN(date), date('now')) FROM (SELECT date FROM meals UNION ALL SELECT date FROM expenses)
+        """,
+        "DROP TRIGGER IF EXISTS expenses_totals_insert",
+        "DROP TRIGGER IF EXISTS expenses_totals_delete",
+        "DROP TRIGGER IF EXISTS meals_totals_insert",
+        "DROP TRIGGER IF EXISTS meals_totals_delete",
+        """
+        CREATE TRIGGER expenses_closed_period BEFORE INSERT ON expenses
+        WHEN NEW.date <\s""" + OPEN_PERIOD_START + """
+        BEGIN
+            SELECT RAISE(ABORT, 'Expense date falls in a closed billing period');
+        END;
+        """,
+        """
+        CREATE TRIGGER meals_closed_period BEFORE INSERT ON meals
+        WHEN NEW.date <\s""" + OPEN_PERIOD_START + """
+        BEGIN
+            SELECT RAISE(ABORT, 'Meal date falls in a closed billing period');
+        END;
+        """,
+        """
+        CREATE TRIGGER expenses_totals_insert AFTER INSERT ON expenses BEGIN
+            UPDATE mess_totals SET total_cost = total_cost + NEW.amount WHERE id = 1;
+        END;
+        """,
+        """
+        CREATE TRIGGER expenses_totals_delete AFTER DELETE ON expenses
+        WHEN OLD.date >=\s""" + OPEN_PERIOD_START + """
+        BEGIN
+            UPDATE mess_totals SET total_cost = total_cost - OLD.amount WHERE id = 1;
+        END;
+        """,
+        """
+        CREATE TRIGGER meals_totals_insert AFTER INSERT ON meals BEGIN
+            UPDATE mess_totals SET total_meals = total_meals + NEW.meal_count WHERE id = 1;
+            INSERT INTO member_totals (member_id, meals) VALUES (NEW.member_id, NEW.meal_count)
+                ON CONFLICT (member_id) DO UPDATE SET meals = meals + excluded.meals;
+        END;
+        """,
+        """
+        CREATE TRIGGER meals_totals_delete AFTER DELETE ON meals
+        WHEN OLD.date >=\s""" + OPEN_PERIOD_START + """
+        BEGIN
+            UPDATE mess_totals SET total_meals = total_meals - OLD.meal_count WHERE id = 1;
+            UPDATE member_totals SET meals = meals - OLD.meal_count WHERE member_id = OLD.member_id;
+        END;
+        """
+    };
+
+    public static void install(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : SCHEMA) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    public static String openPeriodStart(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT start_date FROM billing_periods WHERE end_date IS NULL")) {
+            if (!rs.next()) {
+                throw new SQLException("There is no open billing period.");
+            }
+            return rs.getString("start_date");
+        }
+    }
+
+    /**
+     * Closes the open period on {@code endDate} (inclusive, {@code YYYY-MM-DD}) and opens the
+     * next one the day after. Meals and expenses already entered with later dates stay in the
+     * new period.
+     */
+    public static void closePeriod(Connection conn, String endDate) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            int periodId;
+            String startDate;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT id, start_date FROM billing_periods WHERE end_date IS NULL")) {
+                if (!rs.next()) {
+                    throw new SQLException("There is no open billing period.");
+                }
+                periodId = rs.getInt("id");
+                startDate = rs.getString("start_date");
+            }
+            if (endDate.compareTo(startDate) < 0) {
+                throw new SQLException("The period cannot end before it starts (" + startDate + ").");
+            }
+
+            long totalCost;
+            long totalMeals;
+            try (PreparedStatement stmt = conn.prepareStatement("""
+                    SELECT (SELECT IFNULL(SUM(amount), 0) FROM expenses WHERE date BETWEEN ?1 AND ?2) AS cost,
+                           (SELECT IFNULL(SUM(meal_count), 0) FROM meals WHERE date BETWEEN ?1 AND ?2) AS meals
+                    """)) {
+                stmt.setString(1, startDate);
+                stmt.setString(2, endDate);
+                ResultSet rs = stmt.executeQuery();
+                rs.next();
+                totalCost = rs.getLong("cost");
+                totalMeals = rs.getLong("meals");
+            }
+
+            List<long[]> memberRows = new ArrayList<>();
+            try (PreparedStatement stmt = conn.prepareStatement("""
+                    SELECT m.id, m.deposit, IFNULL(t.carried_cost, 0) AS carried_cost,
+                           (SELECT IFNULL(SUM(ml.meal_count), 0) FROM meals ml
+                            WHERE ml.member_id = m.id AND ml.date BETWEEN ? AND ?) AS meals
+                    FROM members m LEFT JOIN member_totals t ON t.member_id = m.id
+                    """)) {
+                stmt.setString(1, startDate);
+                stmt.setString(2, endDate);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    memberRows.add(new long[]{rs.getInt("id"), rs.getLong("deposit"), rs.getLong("carried_cost"), rs.getLong("meals")});
+                }
+            }
+
+            // Split the period's cost exactly; meals of deleted members are left unallocated.
+            int count = memberRows.size();
+            long[] meals = new long[count];
+            long[] costs = new long[count];
+            for (int i = 0; i < count; i++) {
+                meals[i] = memberRows.get(i)[3];
+            }
+            long allocatedMeals = 0;
+            for (long m : meals) {
+                allocatedMeals += m;
+            }
+            long allocatedCost = totalMeals > 0 ? Math.multiplyExact(totalCost, allocatedMeals) / totalMeals : 0;
+            Money.allocate(allocatedCost, meals, count, costs, new long[count]);
+
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO period_snapshots (period_id, member_id, meals, cost, deposit, balance) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < count; i++) {
+                    long[] row = memberRows.get(i);
+                    stmt.setInt(1, periodId);
+                    stmt.setLong(2, row[0]);
+                    stmt.setLong(3, meals[i]);
+                    stmt.setLong(4, costs[i]);
+                    stmt.setLong(5, row[1]);
+                    stmt.setLong(6, row[1] - row[2] - costs[i]);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "UPDATE billing_periods SET end_date = ?, total_cost = ?, total_meals = ?, meal_rate = ? WHERE id = ?")) {
+                stmt.setString(1, endDate);
+                stmt.setLong(2, totalCost);
+                stmt.setLong(3, totalMeals);
+                stmt.setDouble(4, totalMeals > 0 ? (double) totalCost / totalMeals : 0);
+                stmt.setInt(5, periodId);
+                stmt.executeUpdate();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO billing_periods (start_date) VALUES (date(?, '+1 day'))")) {
+                stmt.setString(1, endDate);
+                stmt.executeUpdate();
+            }
+
+            // Moves the closed period's cost into carried_cost and keeps only later rows open.
+            SummaryTables.rebuild(conn);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Grid for logging a whole day's meals at once: one row per member with breakfast, lunch and
+ * dinner counts. Everything is saved in one journal submission, and the home table picks the
+ * change up from the ledger.
+ */
+public class BulkMealDialog extends JDialog {
+
+    private static final String[] COLUMNS = {"Member Name", "Breakfast", "Lunch", "Dinner"};
+
+    private final List<MealRepository.Choice> members;
+    private final int[][] counts;
+
+    public BulkMealDialog(JFrame owner, MealService service, List<MealRepository.Choice> members, BusyPanel busyPanel,
+                          Component[] toDisable) {
+        super(owner, "Bulk Meal Entry", true);
+        this.members = members;
+        this.counts = new int[members.size()][3];
+
+        JTextField dateField = new JTextField(LocalDate.now().toString(), 10);
+        JPanel datePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        datePanel.add(new JLabel("Date (YYYY-MM-DD):"));
+        datePanel.add(dateField);
+
+        JTable grid = new JTable(new GridModel());
+        grid.putClientProperty("terminateEditOnFocusLost", Boolean.TRUE);
+
+        JButton saveButton = new JButton("Save");
+        JButton cancelButton = new JButton("Cancel");
+        JPanel actions = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        actions.add(saveButton);
+        actions.add(cancelButton);
+
+        add(datePanel, BorderLayout.NORTH);
+        add(new JScrollPane(grid), BorderLayout.CENTER);
+        add(actions, BorderLayout.SOUTH);
+        setSize(500, 500);
+        setLocationRelativeTo(owner);
+
+        cancelButton.addActionListener(e -> dispose());
+        saveButton.addActionListener(e -> {
+            if (grid.isEditing()) {
+                grid.getCellEditor().stopCellEditing();
+            }
+            String date = dateField.getText().trim();
+            try {
+                LocalDate.parse(date);
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(this, "Invalid date.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            int entries = 0;
+            for (int[] row : counts) {
+                if (row[0] + row[1] + row[2] > 0) {
+                    entries++;
+                }
+            }
+            if (entries == 0) {
+                dispose();
+                return;
+            }
+            int[] memberIds = new int[entries];
+            int[] mealCounts = new int[entries];
+            for (int row = 0, i = 0; row < counts.length; row++) {
+                int total = counts[row][0] + counts[row][1] + counts[row][2];
+                if (total > 0) {
+                    memberIds[i] = members.get(row).id;
+                    mealCounts[i] = total;
+                    i++;
+                }
+            }
+
+            dispose();
+            busyPanel.run("Saving " + entries + " meal entries...", service.addMeals(date, memberIds, mealCounts), result -> {
+                JOptionPane.showMessageDialog(owner, "Meals added successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
+            }, ex -> JOptionPane.showMessageDialog(owner, "Failed to add meals: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+            toDisable);
+        });
+    }
+
+    private class GridModel extends AbstractTableModel {
+        @Override
+        public int getRowCount() {
+            return counts.length;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 0 ? String.class : Integer.class;
+        }
+
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return column > 0;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            return column == 0 ? members.get(row).name : counts[row][column - 1];
+        }
+
+        @Override
+        public void setValueAt(Object value, int row, int column) {
+            if (value instanceof Integer && (Integer) value >= 0) {
+                counts[row][column - 1] = (Integer) value;
+                fireTableCellUpdated(row, column);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Status strip shown while a background database call is running. It disables the given
+ * components, shows an indeterminate progress bar with a Cancel button, and hands the result
+ * back on the Event Dispatch Thread.
+ */
+public class BusyPanel extends JPanel {
+
+    private final JLabel messageLabel = new JLabel();
+    private final JProgressBar progressBar = new JProgressBar();
+    private final JButton cancelButton = new JButton("Cancel");
+    private CompletableFuture<?> pending;
+
+    public BusyPanel() {
+        super(new BorderLayout(5, 0));
+        progressBar.setIndeterminate(true);
+        add(messageLabel, BorderLayout.WEST);
+        add(progressBar, BorderLayout.CENTER);
+        add(cancelButton, BorderLayout.EAST);
+        cancelButton.addActionListener(e -> {
+            if (pending != null) {
+                pending.cancel(true);
+            }
+        });
+        setVisible(false);
+    }
+
+    public <T> void run(String message, CompletableFuture<T> future, Consumer<T> onSuccess,
+                        Consumer<Throwable> onFailure, Component... toDisable) {
+        List<Component> disabled = new ArrayList<>();
+        for (Component component : toDisable) {
+            if (component.isEnabled()) {
+                component.setEnabled(false);
+                disabled.add(component);
+            }
+        }
+        pending = future;
+        messageLabel.setText(message);
+        setVisible(true);
+        revalidate();
+
+        future.whenComplete((value, error) -> SwingUtilities.invokeLater(() -> {
+            if (pending == future) {
+                pending = null;
+                setVisible(false);
+            }
+            for (Component component : disabled) {
+                component.setEnabled(true);
+            }
+            if (error == null) {
+                onSuccess.accept(value);
+            } else if (!(error instanceof CancellationException)) {
+                onFailure.accept(cause(error));
+            }
+        }));
+    }
+
+    /**
+     * The failure a background call's future completed with, without the
+     * {@link CompletionException} that chained stages wrap it in.
+     */
+    static Throwable cause(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,392 @@
+import javax.management.ObjectName;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A small bounded pool of long-lived SQLite connections.
+ *
+ * Connections handed out by {@link #getConnection()} are proxies: closing one returns the
+ * physical connection to the pool, and {@code prepareStatement(String)} is served from a
+ * per-connection cache so the fixed SQL strings used by the GUI are only compiled once.
+ *
+ * The cached statements' handler times their execute calls through {@link Metrics#execute};
+ * other statements are passed through {@link Metrics#instrument}. The pool's own counters are
+ * published over JMX as a {@link ConnectionPoolMXBean}.
+ */
+public class ConnectionPool implements AutoCloseable, ConnectionPoolMXBean {
+
+    private static final int STATEMENT_CACHE_SIZE = 32;
+    private static final long BORROW_TIMEOUT_MILLIS = 10_000;
+
+    private final String url;
+    private final int maxSize;
+    private final BlockingQueue<PooledConnection> idle;
+    private final List<PooledConnection> all = new ArrayList<>();
+    private volatile boolean closed;
+
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder closedPhysical = new LongAdder();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LatencyHistogram borrowWait = new LatencyHistogram();
+    private final ObjectName beanName;
+
+    public ConnectionPool(String url, int maxSize) {
+        this.url = url;
+        this.maxSize = maxSize;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+        this.beanName = Metrics.register("mealmanager:type=ConnectionPool,name=" + ObjectName.quote(url), this);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+        long started = System.nanoTime();
+        PooledConnection pooled = idle.poll();
+        if (pooled == null) {
+            pooled = openIfBelowLimit();
+        }
+        if (pooled == null) {
+            try {
+                pooled = idle.poll(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection.", e);
+            }
+            if (pooled == null) {
+                timeouts.increment();
+                throw new SQLException("Timed out waiting for a database connection.");
+            }
+        }
+        borrowWait.record(System.nanoTime() - started);
+        borrows.increment();
+        return pooled.lease();
+    }
+
+    /**
+     * Opens a connection outside the pool's limit, with the same settings and statement cache,
+     * for a single long-lived user such as the journal writer. Closing it closes the physical
+     * connection instead of returning it to the pool.
+     */
+    public Connection openDedicated() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+        PooledConnection dedicated = new PooledConnection(openPhysical(), true);
+        opened.increment();
+        return dedicated.lease();
+    }
+
+    private synchronized PooledConnection openIfBelowLimit() throws SQLException {
+        if (all.size() >= maxSize) {
+            return null;
+        }
+        PooledConnection pooled = new PooledConnection(openPhysical(), false);
+        all.add(pooled);
+        opened.increment();
+        return pooled;
+    }
+
+    private Connection openPhysical() throws SQLException {
+        Connection physical = DriverManager.getConnection(url);
+        try (Statement stmt = physical.createStatement()) {
+            stmt.execute("PRAGMA journal_mode = WAL");
+            stmt.execute("PRAGMA synchronous = NORMAL");
+            stmt.execute("PRAGMA cache_size = -8192");
+            stmt.execute("PRAGMA mmap_size = 268435456");
+            stmt.execute("PRAGMA temp_store = MEMORY");
+            stmt.execute("PRAGMA busy_timeout = 5000");
+        } catch (SQLException e) {
+            physical.close();
+            throw e;
+        }
+        return physical;
+    }
+
+    private void release(PooledConnection pooled) {
+        if (closed || pooled.dedicated || !pooled.reset()) {
+            pooled.closePhysical();
+            synchronized (this) {
+                all.remove(pooled);
+            }
+            return;
+        }
+        idle.offer(pooled);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (PooledConnection pooled : all) {
+            pooled.closePhysical();
+        }
+        all.clear();
+        idle.clear();
+        Metrics.unregister(beanName);
+    }
+
+    @Override
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public synchronized int getOpenConnections() {
+        return all.size();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    @Override
+    public synchronized int getActiveConnections() {
+        return Math.max(0, all.size() - idle.size());
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        return opened.sum();
+    }
+
+    @Override
+    public long getConnectionsClosed() {
+        return closedPhysical.sum();
+    }
+
+    @Override
+    public long getBorrowCount() {
+        return borrows.sum();
+    }
+
+    @Override
+    public long getBorrowTimeouts() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public long getBorrowWaitP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(borrowWait.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getBorrowWaitMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(borrowWait.getMaxNanos());
+    }
+
+    @Override
+    public long getStatementCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getStatementCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    private final class PooledConnection {
+        private final Connection physical;
+        private final boolean dedicated;
+        private final Map<String, PreparedStatement> statementCache =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > STATEMENT_CACHE_SIZE) {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        private final List<CachedStatementHandler> leasedStatements = new ArrayList<>();
+
+        PooledConnection(Connection physical, boolean dedicated) {
+            this.physical = physical;
+            this.dedicated = dedicated;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new LeaseHandler(this));
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement stmt = statementCache.get(sql);
+            if (stmt == null || stmt.isClosed()) {
+                stmt = physical.prepareStatement(sql);
+                statementCache.put(sql, stmt);
+                cacheMisses.increment();
+            } else {
+                cacheHits.increment();
+            }
+            CachedStatementHandler handler = new CachedStatementHandler(stmt, sql);
+            leasedStatements.add(handler);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                handler);
+        }
+
+        boolean reset() {
+            try {
+                for (CachedStatementHandler handler : leasedStatements) {
+                    handler.release();
+                }
+                leasedStatements.clear();
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                return !physical.isClosed();
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        void closePhysical() {
+            for (PreparedStatement stmt : statementCache.values()) {
+                closeQuietly(stmt);
+            }
+            statementCache.clear();
+            closedPhysical.increment();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private final class LeaseHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released;
+
+        LeaseHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                if (!released) {
+                    released = true;
+                    release(pooled);
+                }
+                return null;
+            }
+            if (name.equals("isClosed")) {
+                return released || pooled.physical.isClosed();
+            }
+            if (released && method.getDeclaringClass() != Object.class) {
+                throw new SQLException("Connection has been returned to the pool.");
+            }
+            if (name.equals("prepareStatement") && args != null && args.length == 1) {
+                return pooled.prepare((String) args[0]);
+            }
+            Object result;
+            try {
+                result = method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (name.equals("prepareStatement")) {
+                return Metrics.instrument(PreparedStatement.class, (PreparedStatement) result, (String) args[0]);
+            }
+            if (name.equals("createStatement")) {
+                return Metrics.instrument(Statement.class, (Statement) result, null);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Keeps a cached statement open when the caller closes it. The result set it handed out is
+     * remembered and closed here, because callers usually leave it open and sqlite-jdbc refuses
+     * {@code getResultSet()} while the one from {@code executeQuery} is still open.
+     */
+    private static final class CachedStatementHandler implements InvocationHandler {
+        private final PreparedStatement target;
+        private final String sql;
+        private ResultSet resultSet;
+
+        CachedStatementHandler(PreparedStatement target, String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                release();
+                return null;
+            }
+            Object result;
+            if (name.startsWith("execute")) {
+                result = Metrics.execute(target, method, args, sql);
+            } else {
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            if (result instanceof ResultSet) {
+                resultSet = (ResultSet) result;
+            }
+            return result;
+        }
+
+        /**
+         * Closes the last result set and clears parameters and batch so the next lease starts
+         * clean. Does nothing once the statement has been evicted from the cache.
+         */
+        void release() throws SQLException {
+            if (target.isClosed()) {
+                return;
+            }
+            if (resultSet != null) {
+                resultSet.close();
+                resultSet = null;
+            }
+            target.clearParameters();
+            target.clearBatch();
+        }
+    }
+
+    private static void closeQuietly(Statement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Connection and statement cache counters of a {@link ConnectionPool}, registered as
+ * {@code mealmanager:type=ConnectionPool,name="<url>"}.
+ */
+public interface ConnectionPoolMXBean {
+
+    String getUrl();
+
+    int getMaxSize();
+
+    int getOpenConnections();
+
+    int getIdleConnections();
+
+    int getActiveConnections();
+
+    long getConnectionsOpened();
+
+    long getConnectionsClosed();
+
+    long getBorrowCount();
+
+    long getBorrowTimeouts();
+
+    long getBorrowWaitP99Micros();
+
+    long getBorrowWaitMaxMicros();
+
+    long getStatementCacheHits();
+
+    long getStatementCacheMisses();
+}
@@ -0,0 +1,346 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming CSV import and export.
+ *
+ * Export writes rows straight from the {@link ResultSet} to a buffered file channel, and import
+ * reads one record at a time and commits in batches, so memory use does not depend on the file
+ * size. Rows that fail to parse or insert are skipped and reported with their line number.
+ */
+public class CsvTransfer {
+
+    public static final int DEFAULT_BATCH_SIZE = Integer.getInteger("mealmanager.import.batch", 500);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public enum Kind {
+        MEMBERS("Members", 2,
+            new String[]{"user_id", "name", "deposit"},
+            "SELECT user_id, name, deposit FROM members ORDER BY id",
+            "INSERT INTO members (user_id, name, deposit, balance) VALUES (?, ?, ?, ?)"),
+        DEPOSITS("Deposits", 1,
+            new String[]{"member_id", "amount"},
+            "SELECT id, deposit FROM members ORDER BY id",
+            "UPDATE members SET deposit = deposit + ?, balance = balance + ? WHERE id = ?"),
+        MEALS("Meals", -1,
+            new String[]{"member_id", "meal_count", "date"},
+            "SELECT member_id, meal_count, date FROM meals ORDER BY id",
+            "INSERT INTO meals (member_id, meal_count, date) VALUES (?, ?, ?)"),
+        EXPENSES("Expenses", 1,
+            new String[]{"description", "amount", "date"},
+            "SELECT description, amount, date FROM expenses ORDER BY id",
+            "INSERT INTO expenses (description, amount, date) VALUES (?, ?, ?)");
+
+        final String label;
+        // Index of the amount column, written as a decimal and stored as Money minor units.
+        final int moneyColumn;
+        final String[] columns;
+        final String selectSql;
+        final String writeSql;
+
+        Kind(String label, int moneyColumn, String[] columns, String selectSql, String writeSql) {
+            this.label = label;
+            this.moneyColumn = moneyColumn;
+            this.columns = columns;
+            this.selectSql = selectSql;
+            this.writeSql = writeSql;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    public static class ImportResult {
+        public int imported;
+        public final List<String> errors = new ArrayList<>();
+    }
+
+    public static int export(Connection conn, Kind kind, Path file) throws SQLException, IOException {
+        int rows = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(kind.selectSql);
+             Writer out = new BufferedWriter(Channels.newWriter(FileChannel.open(file,
+                 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+                 StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            writeRecord(out, kind.columns);
+
+            stmt.setFetchSize(1000);
+            ResultSet rs = stmt.executeQuery();
+            String[] record = new String[kind.columns.length];
+            while (rs.next()) {
+                for (int i = 0; i < record.length; i++) {
+                    record[i] = i == kind.moneyColumn ? Money.format(rs.getLong(i + 1)) : rs.getString(i + 1);
+                }
+                writeRecord(out, record);
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    public static ImportResult importFile(Connection conn, Kind kind, Path file, int batchSize) throws SQLException, IOException {
+        ImportResult result = new ImportResult();
+        List<String[]> batch = new ArrayList<>(batchSize);
+        List<Integer> batchLines = new ArrayList<>(batchSize);
+
+        try (CsvReader in = new CsvReader(new BufferedReader(Channels.newReader(
+                 FileChannel.open(file, StandardOpenOption.READ), StandardCharsets.UTF_8), BUFFER_SIZE));
+             PreparedStatement stmt = conn.prepareStatement(kind.writeSql)) {
+            String[] header = in.next();
+            if (header == null) {
+                return result;
+            }
+            int[] positions = mapColumns(kind, header);
+
+            conn.setAutoCommit(false);
+            try {
+                String[] record;
+                while ((record = in.next()) != null) {
+                    int line = in.getRecordLine();
+                    if (record.length == 1 && record[0].isEmpty()) {
+                        continue;
+                    }
+                    String[] values = new String[positions.length];
+                    for (int i = 0; i < positions.length; i++) {
+                        values[i] = positions[i] < record.length ? record[positions[i]].trim() : "";
+                    }
+                    try {
+                        bind(kind, stmt, values);
+                        stmt.addBatch();
+                        batch.add(values);
+                        batchLines.add(line);
+                    } catch (IllegalArgumentException e) {
+                        result.errors.add("Line " + line + ": " + e.getMessage());
+                    }
+                    if (batch.size() >= batchSize) {
+                        flush(conn, kind, stmt, batch, batchLines, result);
+                    }
+                }
+                flush(conn, kind, stmt, batch, batchLines, result);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return result;
+    }
+
+    private static int[] mapColumns(Kind kind, String[] header) throws IOException {
+        int[] positions = new int[kind.columns.length];
+        for (int i = 0; i < kind.columns.length; i++) {
+            positions[i] = -1;
+            for (int j = 0; j < header.length; j++) {
+                if (header[j].trim().equalsIgnoreCase(kind.columns[i])) {
+                    positions[i] = j;
+                }
+            }
+            if (positions[i] < 0) {
+                throw new IOException("Missing column '" + kind.columns[i] + "'. Expected header: " + String.join(",", kind.columns));
+            }
+        }
+        return positions;
+    }
+
+    private static void bind(Kind kind, PreparedStatement stmt, String[] values) throws SQLException {
+        try {
+            switch (kind) {
+                case MEMBERS:
+                    long deposit = Money.parse(values[2]);
+                    stmt.setInt(1, Integer.parseInt(values[0]));
+                    stmt.setString(2, requireText(values[1], "name"));
+                    stmt.setLong(3, deposit);
+                    stmt.setLong(4, deposit);
+                    break;
+                case DEPOSITS:
+                    long amount = Money.parse(values[1]);
+                    stmt.setLong(1, amount);
+                    stmt.setLong(2, amount);
+                    stmt.setInt(3, Integer.parseInt(values[0]));
+                    break;
+                case MEALS:
+                    stmt.setInt(1, Integer.parseInt(values[0]));
+                    stmt.setInt(2, Integer.parseInt(values[1]));
+                    stmt.setString(3, LocalDate.parse(values[2]).toString());
+                    break;
+                case EXPENSES:
+                    stmt.setString(1, requireText(values[0], "description"));
+                    stmt.setLong(2, Money.parse(values[1]));
+                    stmt.setString(3, LocalDate.parse(values[2]).toString());
+                    break;
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("invalid value (" + e.getMessage() + ")");
+        }
+    }
+
+    private static String requireText(String value, String column) {
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException(column + " is empty");
+        }
+        return value;
+    }
+
+    /**
+     * Commits the pending batch. If the batch fails as a whole, it is rolled back and replayed
+     * row by row so that only the offending rows are rejected.
+     */
+    private static void flush(Connection conn, Kind kind, PreparedStatement stmt, List<String[]> batch,
+                              List<Integer> batchLines, ImportResult result) throws SQLException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            result.imported += countApplied(stmt.executeBatch(), batchLines, result);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            stmt.clearBatch();
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    bind(kind, stmt, batch.get(i));
+                    if (stmt.executeUpdate() > 0) {
+                        result.imported++;
+                    } else {
+                        result.errors.add("Line " + batchLines.get(i) + ": no matching row");
+                    }
+                } catch (SQLException rowError) {
+                    result.errors.add("Line " + batchLines.get(i) + ": " + rowError.getMessage());
+                }
+            }
+            conn.commit();
+        }
+        batch.clear();
+        batchLines.clear();
+    }
+
+    private static int countApplied(int[] updateCounts, List<Integer> batchLines, ImportResult result) {
+        int applied = 0;
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == 0) {
+                result.errors.add("Line " + batchLines.get(i) + ": no matching row");
+            } else {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    static void writeRecord(Writer out, String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String value = values[i] == null ? "" : values[i];
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(value);
+            }
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Minimal RFC 4180 reader: quoted fields may contain commas, doubled quotes and line breaks.
+     */
+    private static class CsvReader implements AutoCloseable {
+        private final Reader in;
+        private final StringBuilder field = new StringBuilder();
+        private int line = 1;
+        private int recordLine;
+        private int pushedBack = -2;
+
+        CsvReader(Reader in) {
+            this.in = in;
+        }
+
+        int getRecordLine() {
+            return recordLine;
+        }
+
+        private int read() throws IOException {
+            if (pushedBack != -2) {
+                int c = pushedBack;
+                pushedBack = -2;
+                return c;
+            }
+            return in.read();
+        }
+
+        String[] next() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            recordLine = line;
+            List<String> values = new ArrayList<>();
+            boolean quoted = false;
+            field.setLength(0);
+            while (true) {
+                if (c == -1) {
+                    values.add(field.toString());
+                    return values.toArray(new String[0]);
+                }
+                if (quoted) {
+                    if (c == '"') {
+                        int n = read();
+                        if (n == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            c = n;
+                            continue;
+                        }
+                    } else {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n') {
+                    if (c == '\r') {
+                        int n = read();
+                        if (n != '\n') {
+                            pushedBack = n;
+                        }
+                    }
+                    line++;
+                    values.add(field.toString());
+                    return values.toArray(new String[0]);
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
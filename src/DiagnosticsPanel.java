@@ -0,0 +1,206 @@
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What the application has been doing: per-query latency, connection pool counters, how long
+ * the Event Dispatch Thread was kept busy, and the most recent slow queries. Reads only
+ * in-memory {@link Metrics}, so refreshing once a second costs nothing noticeable. Refreshing
+ * stops while the panel is not showing.
+ */
+public class DiagnosticsPanel extends JPanel {
+
+    private static final String[] QUERY_COLUMNS = {"Query", "Count", "Errors", "Rows changed", "Total ms", "Mean us",
+        "p50 us", "p99 us", "Max us"};
+    private static final String[] SLOW_COLUMNS = {"Time", "ms", "Rows changed", "Thread", "Query"};
+
+    private final Metrics metrics = Metrics.getInstance();
+    private final ConnectionPool pool;
+    private final JLabel summaryLabel = new JLabel(" ");
+    private final QueryModel queryModel = new QueryModel();
+    private final SlowQueryModel slowModel = new SlowQueryModel();
+    private final Timer timer = new Timer(1000, e -> refresh());
+
+    public DiagnosticsPanel(ConnectionPool pool) {
+        super(new BorderLayout(0, 5));
+        this.pool = pool;
+
+        JTable queryTable = new JTable(queryModel);
+        queryTable.getColumnModel().getColumn(0).setPreferredWidth(400);
+        JTable slowTable = new JTable(slowModel);
+        slowTable.getColumnModel().getColumn(4).setPreferredWidth(400);
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Queries", new JScrollPane(queryTable));
+        tabs.addTab("Slow Queries", new JScrollPane(slowTable));
+
+        JSpinner thresholdSpinner = new JSpinner(new SpinnerNumberModel(
+            (int) Math.min(Integer.MAX_VALUE, metrics.getSlowQueryThresholdMillis()), 0, 60_000, 10));
+        thresholdSpinner.addChangeListener(e -> metrics.setSlowQueryThresholdMillis((Integer) thresholdSpinner.getValue()));
+        JCheckBox enabledBox = new JCheckBox("Record queries", metrics.isEnabled());
+        enabledBox.addActionListener(e -> metrics.setEnabled(enabledBox.isSelected()));
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            metrics.reset();
+            refresh();
+        });
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controls.add(new JLabel("Slow query threshold (ms):"));
+        controls.add(thresholdSpinner);
+        controls.add(enabledBox);
+        controls.add(resetButton);
+
+        add(summaryLabel, BorderLayout.NORTH);
+        add(tabs, BorderLayout.CENTER);
+        add(controls, BorderLayout.SOUTH);
+        refresh();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        timer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        timer.stop();
+        super.removeNotify();
+    }
+
+    private void refresh() {
+        List<Metrics.QuerySnapshot> queries = metrics.getQueries();
+        long count = 0;
+        long rows = 0;
+        long errors = 0;
+        for (Metrics.QuerySnapshot query : queries) {
+            count += query.getCount();
+            rows += query.getRows();
+            errors += query.getErrors();
+        }
+        queryModel.show(queries);
+        slowModel.show(metrics.getSlowQueries());
+
+        String poolText = pool == null ? "no pool" : String.format(
+            "%d/%d open (%d in use), %d opened, %d borrows, wait p99 %d us, %d timeouts, statement cache %d hits / %d misses",
+            pool.getOpenConnections(), pool.getMaxSize(), pool.getActiveConnections(), pool.getConnectionsOpened(),
+            pool.getBorrowCount(), pool.getBorrowWaitP99Micros(), pool.getBorrowTimeouts(), pool.getStatementCacheHits(),
+            pool.getStatementCacheMisses());
+        summaryLabel.setText(String.format("<html>Queries: %d (%d errors, %d slow), %d rows changed<br>Pool: %s<br>"
+                + "Event Dispatch Thread: %d events, p99 %d us, max %d ms, blocked %d times for %d ms in total</html>",
+            count, errors, metrics.getSlowQueryCount(), rows, poolText, metrics.getEdtEventCount(), metrics.getEdtP99Micros(),
+            metrics.getEdtMaxMicros() / 1000, metrics.getEdtBlockedCount(), metrics.getEdtBlockedMillis()));
+    }
+
+    private static class QueryModel extends AbstractTableModel {
+        private List<Metrics.QuerySnapshot> queries = new ArrayList<>();
+
+        void show(List<Metrics.QuerySnapshot> queries) {
+            this.queries = queries;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return queries.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return QUERY_COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return QUERY_COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 0 ? String.class : Long.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            Metrics.QuerySnapshot query = queries.get(row);
+            switch (column) {
+                case 0:
+                    return query.getSql();
+                case 1:
+                    return query.getCount();
+                case 2:
+                    return query.getErrors();
+                case 3:
+                    return query.getRows();
+                case 4:
+                    return query.getTotalMillis();
+                case 5:
+                    return query.getMeanMicros();
+                case 6:
+                    return query.getP50Micros();
+                case 7:
+                    return query.getP99Micros();
+                case 8:
+                    return query.getMaxMicros();
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private static class SlowQueryModel extends AbstractTableModel {
+        private List<Metrics.SlowQuery> slowQueries = new ArrayList<>();
+
+        void show(List<Metrics.SlowQuery> slowQueries) {
+            this.slowQueries = slowQueries;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return slowQueries.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return SLOW_COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return SLOW_COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 1 || column == 2 ? Long.class : String.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            Metrics.SlowQuery slow = slowQueries.get(row);
+            switch (column) {
+                case 0:
+                    return LocalTime.ofInstant(Instant.ofEpochMilli(slow.getTime()), ZoneId.systemDefault())
+                        .truncatedTo(ChronoUnit.SECONDS).toString();
+                case 1:
+                    return slow.getMicros() / 1000;
+                case 2:
+                    return slow.getRows();
+                case 3:
+                    return slow.getThread();
+                case 4:
+                    return slow.getSql();
+                default:
+                    return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,387 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only journal of meal, deposit and expense events with a single group-committing
+ * writer.
+ *
+ * Callers submit events and get a future back. The writer thread takes whatever has queued up
+ * and, in one transaction, applies each submission to the ledger tables and appends it to
+ * {@code event_log}. A lone entry commits at once; the writer only lingers, for up to
+ * {@code mealmanager.journal.linger.ms} (2 ms by default), while more entries keep arriving, and
+ * entries that arrive during a commit form the next group. The writer keeps its own connection
+ * with {@code synchronous = FULL}, so a group of concurrent entries costs one fsync instead of one
+ * each, and the futures complete only after that commit.
+ *
+ * Every submission runs under its own savepoint. An entry that fails (an unknown member, a date
+ * in a closed period) is rolled back alone, logged as rejected and fails its future, and the
+ * rest of the group still commits. The log entry and its effect are written in the same
+ * transaction, so after a crash either both are on disk or neither is. Any future that had not
+ * completed belonged to a transaction that never committed.
+ */
+public class EventJournal implements AutoCloseable {
+
+    /**
+     * Supplies connections. The journal asks it for one connection, keeps it for as long as the
+     * writer runs and only asks again after a failed write, so it should not be a bounded pool.
+     */
+    public interface ConnectionSource {
+        Connection get() throws SQLException;
+    }
+
+    public enum Kind {
+        MEAL, DEPOSIT, EXPENSE
+    }
+
+    /**
+     * One journal entry. {@code amount} is a meal count for meals and {@link Money} minor units
+     * otherwise. A null date means today in the database's clock.
+     */
+    public static final class Event {
+        final Kind kind;
+        final int memberId;
+        final long amount;
+        final String description;
+        final String date;
+
+        private Event(Kind kind, int memberId, long amount, String description, String date) {
+            this.kind = kind;
+            this.memberId = memberId;
+            this.amount = amount;
+            this.description = description;
+            this.date = date;
+        }
+
+        public static Event meal(int memberId, int mealCount, String date) {
+            return new Event(Kind.MEAL, memberId, mealCount, null, date);
+        }
+
+        public static Event deposit(int memberId, long amount) {
+            return new Event(Kind.DEPOSIT, memberId, amount, null, null);
+        }
+
+        public static Event expense(String description, long amount) {
+            return new Event(Kind.EXPENSE, 0, amount, description, null);
+        }
+    }
+
+    static final String SCHEMA = """
+        CREATE TABLE IF NOT EXISTS event_log (
+            seq INTEGER PRIMARY KEY AUTOINCREMENT,
+            kind TEXT NOT NULL,
+            member_id INTEGER,
+            amount INTEGER NOT NULL,
+            description TEXT,
+            date DATE,
+            status TEXT NOT NULL CHECK (status IN ('applied', 'rejected')),
+            error TEXT,
+            recorded_at TEXT NOT NULL DEFAULT (strftime('%Y-%m-%d %H:%M:%f', 'now'))
+        )
+        """;
+
+    private static final long LINGER_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("mealmanager.journal.linger.ms", 2));
+    private static final long ARRIVAL_GAP_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int MAX_GROUP = 512;
+
+    private static final class Submission {
+        final Event[] events;
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        Submission(Event[] events) {
+            this.events = events;
+        }
+    }
+
+    private static final Submission SHUTDOWN = new Submission(new Event[0]);
+
+    private final ConnectionSource connections;
+    private final BlockingQueue<Submission> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+    // Used by the writer thread only.
+    private Connection connection;
+
+    public EventJournal(ConnectionSource connections) {
+        this.connections = connections;
+        this.writer = new Thread(this::writeLoop, "meal-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues one event. The future completes with the event's log sequence number once it is
+     * durable, or exceptionally if it was rejected.
+     */
+    public CompletableFuture<Long> submit(Event event) {
+        return submitAll(event);
+    }
+
+    /**
+     * Queues events that must be applied together: either all of them commit or none do. The
+     * future completes with the sequence number of the last one.
+     */
+    public CompletableFuture<Long> submitAll(Event... events) {
+        Submission submission = new Submission(events);
+        // Checked and queued under the lock, so nothing can be queued behind the shutdown marker.
+        synchronized (this) {
+            if (closed) {
+                submission.result.completeExceptionally(new SQLException("The event journal is closed."));
+                return submission.result;
+            }
+            queue.add(submission);
+        }
+        return submission.result;
+    }
+
+    /**
+     * Stops accepting events, waits for everything already queued to be written and stops the
+     * writer.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!closed) {
+                closed = true;
+                queue.add(SHUTDOWN);
+            }
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<Submission> group = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                Submission first = queue.take();
+                if (first == SHUTDOWN) {
+                    running = false;
+                } else {
+                    group.add(first);
+                }
+                // An empty queue commits at once. Entries already waiting mean others are writing
+                // concurrently, so keep collecting while they arrive less than a gap apart.
+                long deadline = System.nanoTime() + LINGER_NANOS;
+                Submission next = running ? queue.poll() : null;
+                while (next != null) {
+                    if (next == SHUTDOWN) {
+                        running = false;
+                        break;
+                    }
+                    group.add(next);
+                    if (group.size() >= MAX_GROUP) {
+                        break;
+                    }
+                    long left = deadline - System.nanoTime();
+                    next = left > 0 ? queue.poll(Math.min(left, ARRIVAL_GAP_NANOS), TimeUnit.NANOSECONDS) : queue.poll();
+                }
+                // A shutdown drains whatever was queued ahead of it.
+                if (!running) {
+                    queue.drainTo(group);
+                    group.remove(SHUTDOWN);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            if (!group.isEmpty()) {
+                writeGroup(group);
+                group.clear();
+            }
+        }
+        // The writer may also stop on an interrupt; refuse new entries and fail any still queued
+        // rather than leave them waiting forever.
+        synchronized (this) {
+            closed = true;
+        }
+        for (Submission late = queue.poll(); late != null; late = queue.poll()) {
+            late.result.completeExceptionally(new SQLException("The event journal is closed."));
+        }
+        closeConnection();
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection == null) {
+            Connection conn = connections.get();
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA synchronous = FULL");
+            } catch (SQLException e) {
+                conn.close();
+                throw e;
+            }
+            connection = conn;
+        }
+        return connection;
+    }
+
+    private void closeConnection() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // The connection is being dropped either way.
+            }
+            connection = null;
+        }
+    }
+
+    private void writeGroup(List<Submission> group) {
+        List<Object> outcomes = new ArrayList<>(group.size());
+        try {
+            Connection conn = connection();
+            conn.setAutoCommit(false);
+            try {
+                for (Submission submission : group) {
+                    outcomes.add(apply(conn, submission.events));
+                }
+                conn.commit();
+            } catch (Throwable e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (Throwable e) {
+            // Whatever went wrong fails this group only; the writer carries on with the next, on a
+            // fresh connection in case this one is broken.
+            closeConnection();
+            for (Submission submission : group) {
+                submission.result.completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (int i = 0; i < group.size(); i++) {
+            Object outcome = outcomes.get(i);
+            if (outcome instanceof Long) {
+                group.get(i).result.complete((Long) outcome);
+            } else {
+                group.get(i).result.completeExceptionally((Throwable) outcome);
+            }
+        }
+    }
+
+    /**
+     * Applies one submission under a savepoint and returns the last sequence number, or the
+     * exception that rejected it.
+     */
+    private static Object apply(Connection conn, Event[] events) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SAVEPOINT journal_entry");
+            long seq = 0;
+            Exception failure = null;
+            try {
+                applyEffects(conn, events);
+                seq = log(conn, events, null);
+            } catch (SQLException | IllegalArgumentException e) {
+                failure = e;
+            }
+            if (failure == null) {
+                stmt.execute("RELEASE journal_entry");
+                return seq;
+            }
+            stmt.execute("ROLLBACK TO journal_entry");
+            stmt.execute("RELEASE journal_entry");
+            log(conn, events, failure.getMessage() == null ? failure.toString() : failure.getMessage());
+            return failure;
+        }
+    }
+
+    /**
+     * Applies the events with one batched statement per kind, so a bulk entry of many meals runs
+     * as a single batch rather than one statement execution per row.
+     */
+    private static void applyEffects(Connection conn, Event[] events) throws SQLException {
+        try (PreparedStatement meals = conn.prepareStatement("""
+                 INSERT INTO meals (member_id, meal_count, date)
+                 SELECT ?1, ?2, IFNULL(?3, date('now')) WHERE EXISTS (SELECT 1 FROM members WHERE id = ?1)
+                 """);
+             PreparedStatement deposits = conn.prepareStatement(
+                 "UPDATE members SET deposit = deposit + ?, balance = balance + ? WHERE id = ?");
+             PreparedStatement expenses = conn.prepareStatement(
+                 "INSERT INTO expenses (description, amount, date) VALUES (?, ?, IFNULL(?, date('now')))")) {
+            List<Event> mealEvents = new ArrayList<>();
+            List<Event> depositEvents = new ArrayList<>();
+            for (Event event : events) {
+                switch (event.kind) {
+                    case MEAL:
+                        meals.setInt(1, event.memberId);
+                        meals.setLong(2, event.amount);
+                        meals.setString(3, event.date);
+                        meals.addBatch();
+                        mealEvents.add(event);
+                        break;
+                    case DEPOSIT:
+                        deposits.setLong(1, event.amount);
+                        deposits.setLong(2, event.amount);
+                        deposits.setInt(3, event.memberId);
+                        deposits.addBatch();
+                        depositEvents.add(event);
+                        break;
+                    case EXPENSE:
+                        expenses.setString(1, event.description);
+                        expenses.setLong(2, event.amount);
+                        expenses.setString(3, event.date);
+                        expenses.addBatch();
+                        break;
+                }
+            }
+            requireMembers(mealEvents, meals.executeBatch());
+            requireMembers(depositEvents, deposits.executeBatch());
+            expenses.executeBatch();
+        }
+    }
+
+    /**
+     * A meal or deposit that changed no row named a member that does not exist.
+     */
+    private static void requireMembers(List<Event> events, int[] rowCounts) {
+        for (int i = 0; i < rowCounts.length; i++) {
+            if (rowCounts[i] == 0) {
+                throw new IllegalArgumentException("No member with ID " + events.get(i).memberId + ".");
+            }
+        }
+    }
+
+    /**
+     * Appends the events to the log as one batch and returns the last sequence number.
+     */
+    private static long log(Connection conn, Event[] events, String error) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                INSERT INTO event_log (kind, member_id, amount, description, date, status, error)
+                VALUES (?, ?, ?, ?, IFNULL(?, date('now')), ?, ?)
+                """);
+             PreparedStatement rowId = conn.prepareStatement("SELECT last_insert_rowid()")) {
+            for (Event event : events) {
+                stmt.setString(1, event.kind.name().toLowerCase());
+                if (event.kind == Kind.EXPENSE) {
+                    stmt.setNull(2, Types.INTEGER);
+                } else {
+                    stmt.setInt(2, event.memberId);
+                }
+                stmt.setLong(3, event.amount);
+                stmt.setString(4, event.description);
+                stmt.setString(5, event.date);
+                stmt.setString(6, error == null ? "applied" : "rejected");
+                stmt.setString(7, error);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            ResultSet rs = rowId.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * End-of-period forecast of the meal rate and every member's balance.
+ *
+ * {@link #load} reads the open period's day-by-day history from the report rollups once. Each
+ * simulation trial then plays out every remaining day of the period: each member eats what they
+ * ate on a randomly drawn day of their own history, and the mess spends what it spent on another
+ * randomly drawn day. Running a few thousand trials gives a range for the final meal rate and
+ * each member's balance, not just one guess.
+ *
+ * A {@link Scenario} adds what-if changes on top of the history: guests eating with a member
+ * every day, and a change in prices. Trials are split across the common fork-join pool, and the
+ * per-member percentiles are computed the same way. A history keeps one random seed, so runs of
+ * different scenarios over it draw the same days and differ only by the scenario.
+ */
+public class Forecast {
+
+    public static final int DEFAULT_TRIALS = Integer.getInteger("mealmanager.forecast.trials", 2000);
+
+    private static final int TRIALS_PER_TASK = 64;
+    private static final int MEMBERS_PER_TASK = 32;
+    private static final double[] PERCENTILES = {0.1, 0.5, 0.9};
+
+    /**
+     * The open period so far, one column per member and one row per day from the period start
+     * to today, plus the totals the simulation builds on.
+     */
+    public static final class History {
+        final String periodStart;
+        final String endDate;
+        final int remainingDays;
+        final long seed;
+        final int[] ids;
+        final String[] names;
+        final long[] deposits;
+        final long[] carriedCosts;
+        final long[] mealsSoFar;
+        final int[][] dailyMeals;
+        final long[] dailyCosts;
+        final long costSoFar;
+        final long totalMealsSoFar;
+
+        History(String periodStart, String endDate, int remainingDays, long seed, int[] ids, String[] names,
+                long[] deposits, long[] carriedCosts, long[] mealsSoFar, int[][] dailyMeals, long[] dailyCosts,
+                long costSoFar, long totalMealsSoFar) {
+            this.periodStart = periodStart;
+            this.endDate = endDate;
+            this.remainingDays = remainingDays;
+            this.seed = seed;
+            this.ids = ids;
+            this.names = names;
+            this.deposits = deposits;
+            this.carriedCosts = carriedCosts;
+            this.mealsSoFar = mealsSoFar;
+            this.dailyMeals = dailyMeals;
+            this.dailyCosts = dailyCosts;
+            this.costSoFar = costSoFar;
+            this.totalMealsSoFar = totalMealsSoFar;
+        }
+
+        public String getEndDate() {
+            return endDate;
+        }
+
+        public int getRemainingDays() {
+            return remainingDays;
+        }
+
+        public int getMemberCount() {
+            return ids.length;
+        }
+
+        /**
+         * The period's meal rate so far in minor units per meal.
+         */
+        public double getMealRate() {
+            return totalMealsSoFar > 0 ? (double) costSoFar / totalMealsSoFar : 0;
+        }
+    }
+
+    /**
+     * What-if changes for the rest of the period. Guests are charged to their host, and each
+     * guest meal is assumed to cost the period's meal rate so far. The price factor scales
+     * future spending, so 1.1 is a 10% rise.
+     */
+    public static final class Scenario {
+        public static final Scenario BASELINE = new Scenario(0, 0, 1.0);
+
+        final int guestMealsPerDay;
+        final int hostMemberId;
+        final double priceFactor;
+
+        public Scenario(int guestMealsPerDay, int hostMemberId, double priceFactor) {
+            this.guestMealsPerDay = guestMealsPerDay;
+            this.hostMemberId = hostMemberId;
+            this.priceFactor = priceFactor;
+        }
+    }
+
+    /**
+     * Percentiles over all trials, each as {10th, 50th, 90th}, and each member's expected meal
+     * count. Member arrays are in the order of the history. Amounts are {@link Money} minor units.
+     */
+    public static final class Result {
+        public final int trials;
+        final long[] mealRate = new long[PERCENTILES.length];
+        final long[] totalCost = new long[PERCENTILES.length];
+        final long[] totalMeals = new long[PERCENTILES.length];
+        final int[] ids;
+        final String[] names;
+        final long[] projectedMeals;
+        final long[][] balances;
+        final double[] deficitChance;
+        long elapsedMillis;
+
+        Result(History history, int trials) {
+            this.trials = trials;
+            int members = history.ids.length;
+            this.ids = history.ids;
+            this.names = history.names;
+            this.projectedMeals = new long[members];
+            this.balances = new long[members][];
+            this.deficitChance = new double[members];
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    private interface RangeTask {
+        void run(int from, int to);
+    }
+
+    private static final class Split extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final RangeTask task;
+
+        Split(int from, int to, int grain, RangeTask task) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                task.run(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Split(from, mid, grain, task), new Split(mid, to, grain, task));
+        }
+    }
+
+    private static void parallel(int count, int grain, RangeTask task) {
+        ForkJoinPool.commonPool().invoke(new Split(0, count, grain, task));
+    }
+
+    /**
+     * Reads the open period's daily history for the members of a ledger snapshot. Days without
+     * entries count as zero meals and zero spending.
+     */
+    static History load(Connection conn, Ledger.Snapshot snapshot, LocalDate today, LocalDate endDate) throws SQLException {
+        MessSummary summary = snapshot.summary();
+        LocalDate start = LocalDate.parse(summary.getPeriodStart());
+        int observed = (int) Math.max(1, ChronoUnit.DAYS.between(start, today) + 1);
+        int remaining = (int) Math.max(0, ChronoUnit.DAYS.between(today, endDate));
+        int members = snapshot.size();
+
+        int[][] dailyMeals = new int[members][observed];
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT day, member_id, meals FROM daily_member_meals WHERE day BETWEEN ? AND ?")) {
+            stmt.setString(1, start.toString());
+            stmt.setString(2, today.toString());
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                int member = snapshot.indexOf(rs.getInt("member_id"));
+                if (member >= 0) {
+                    dailyMeals[member][(int) ChronoUnit.DAYS.between(start, LocalDate.parse(rs.getString("day")))] = rs.getInt("meals");
+                }
+            }
+        }
+        long[] dailyCosts = new long[observed];
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT day, cost FROM daily_totals WHERE day BETWEEN ? AND ?")) {
+            stmt.setString(1, start.toString());
+            stmt.setString(2, today.toString());
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                dailyCosts[(int) ChronoUnit.DAYS.between(start, LocalDate.parse(rs.getString("day")))] = rs.getLong("cost");
+            }
+        }
+
+        long[] mealsSoFar = new long[members];
+        for (int m = 0; m < members; m++) {
+            mealsSoFar[m] = snapshot.meals[m];
+        }
+        return new History(start.toString(), endDate.toString(), remaining, new SplittableRandom().nextLong(),
+            snapshot.ids, snapshot.names, snapshot.deposits, snapshot.carriedCosts, mealsSoFar, dailyMeals, dailyCosts,
+            summary.getTotalCost(), summary.getTotalMeals());
+    }
+
+    public static Result simulate(History history, Scenario scenario, int trials) {
+        long started = System.nanoTime();
+        int members = history.ids.length;
+        int observed = history.dailyCosts.length;
+        int days = history.remainingDays;
+        int host = scenario.hostMemberId == 0 ? -1 : Arrays.binarySearch(history.ids, scenario.hostMemberId);
+        long guestMeals = host >= 0 ? (long) scenario.guestMealsPerDay * days : 0;
+        long guestCost = Math.round(guestMeals * history.getMealRate() * scenario.priceFactor);
+
+        if (trials < 1) {
+            throw new IllegalArgumentException("At least one trial is needed.");
+        }
+        // Indexed [member][trial] so each member's outcomes can be sorted in place afterwards.
+        long[][] balances = new long[members][trials];
+        long[] rates = new long[trials];
+        long[] costs = new long[trials];
+        long[] totals = new long[trials];
+
+        parallel(trials, TRIALS_PER_TASK, (from, to) -> {
+            long[] projected = new long[members];
+            for (int t = from; t < to; t++) {
+                // One generator per trial, so the draws do not depend on how the trials were split.
+                SplittableRandom random = new SplittableRandom(history.seed + t * 0x9E3779B97F4A7C15L);
+                long futureCost = 0;
+                for (int d = 0; d < days; d++) {
+                    futureCost += history.dailyCosts[random.nextInt(observed)];
+                }
+                long totalCost = history.costSoFar + Math.round(futureCost * scenario.priceFactor) + guestCost;
+                long totalMeals = history.totalMealsSoFar + guestMeals;
+                for (int m = 0; m < members; m++) {
+                    int[] own = history.dailyMeals[m];
+                    long added = m == host ? guestMeals : 0;
+                    for (int d = 0; d < days; d++) {
+                        added += own[random.nextInt(observed)];
+                    }
+                    projected[m] = history.mealsSoFar[m] + added;
+                    totalMeals += added - (m == host ? guestMeals : 0);
+                }
+
+                double rate = totalMeals > 0 ? (double) totalCost / totalMeals : 0;
+                for (int m = 0; m < members; m++) {
+                    balances[m][t] = history.deposits[m] - history.carriedCosts[m] - Math.round(projected[m] * rate);
+                }
+                rates[t] = Math.round(rate);
+                costs[t] = totalCost;
+                totals[t] = totalMeals;
+            }
+        });
+
+        Result result = new Result(history, trials);
+        percentiles(rates, result.mealRate);
+        percentiles(costs, result.totalCost);
+        percentiles(totals, result.totalMeals);
+        parallel(members, MEMBERS_PER_TASK, (from, to) -> {
+            for (int m = from; m < to; m++) {
+                // The expected meal count needs no sampling: the average day times the days left.
+                long historyMeals = 0;
+                for (int meal : history.dailyMeals[m]) {
+                    historyMeals += meal;
+                }
+                result.projectedMeals[m] = history.mealsSoFar[m] + Math.round((double) historyMeals * days / observed)
+                    + (m == host ? guestMeals : 0);
+                long[] outcomes = balances[m];
+                result.balances[m] = new long[PERCENTILES.length];
+                percentiles(outcomes, result.balances[m]);
+                int negative = 0;
+                while (negative < trials && outcomes[negative] < 0) {
+                    negative++;
+                }
+                result.deficitChance[m] = (double) negative / trials;
+            }
+        });
+        result.elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        return result;
+    }
+
+    /**
+     * Sorts the values and writes the 10th, 50th and 90th percentiles to {@code out}.
+     */
+    private static void percentiles(long[] values, long[] out) {
+        Arrays.sort(values);
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            out[i] = values[(int) Math.round(PERCENTILES[i] * (values.length - 1))];
+        }
+    }
+}
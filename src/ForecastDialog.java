@@ -0,0 +1,167 @@
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.time.LocalDate;
+
+/**
+ * Where the period is heading: the projected meal rate and each member's projected balance, with
+ * what-if controls for guests and prices. The history is loaded once per end date, and every
+ * change to the scenario re-runs only the simulation, so results follow the controls as they
+ * are adjusted.
+ */
+public class ForecastDialog extends JDialog {
+
+    private static final String[] COLUMNS = {"Member Name", "Projected Meals", "Balance (Low)", "Balance (Expected)",
+        "Balance (High)", "Chance of Deficit"};
+    private static final Class<?>[] COLUMN_CLASSES = {String.class, Integer.class, Long.class, Long.class, Long.class, String.class};
+
+    private final MealService service;
+    private final ResultModel model = new ResultModel();
+    private final JComboBox<MealRepository.Choice> hostBox = new JComboBox<>();
+    private final JSpinner guestSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 1000, 1));
+    private final JSpinner priceSpinner = new JSpinner(new SpinnerNumberModel(0, -90, 500, 5));
+    private final JLabel statsLabel = new JLabel(" ");
+    private final BusyPanel busyPanel = new BusyPanel();
+
+    private Forecast.History history;
+    private int generation;
+
+    public ForecastDialog(JFrame owner, MealService service) {
+        super(owner, "Forecast", false);
+        this.service = service;
+
+        LocalDate today = LocalDate.now();
+        JTextField endField = new JTextField(today.withDayOfMonth(today.lengthOfMonth()).toString(), 10);
+        JButton loadButton = new JButton("Load");
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controls.add(new JLabel("Period ends:"));
+        controls.add(endField);
+        controls.add(loadButton);
+        controls.add(new JLabel("Guest meals/day:"));
+        controls.add(guestSpinner);
+        controls.add(new JLabel("with"));
+        controls.add(hostBox);
+        controls.add(new JLabel("Price change %:"));
+        controls.add(priceSpinner);
+
+        JTable table = new JTable(model);
+        table.setDefaultRenderer(Long.class, new AmountRenderer());
+        statsLabel.setHorizontalAlignment(SwingConstants.CENTER);
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(statsLabel, BorderLayout.CENTER);
+        southPanel.add(busyPanel, BorderLayout.SOUTH);
+
+        add(controls, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(southPanel, BorderLayout.SOUTH);
+        setSize(1000, 550);
+        setLocationRelativeTo(owner);
+
+        loadButton.addActionListener(e -> load(endField.getText().trim(), loadButton));
+        guestSpinner.addChangeListener(e -> simulate());
+        priceSpinner.addChangeListener(e -> simulate());
+        hostBox.addActionListener(e -> simulate());
+        load(endField.getText().trim(), loadButton);
+    }
+
+    private void load(String endDate, JButton loadButton) {
+        busyPanel.run("Loading history...", service.forecastHistory(endDate), loaded -> {
+            // Refilling the host list fires selection events; keep them from simulating.
+            history = null;
+            MealRepository.Choice selected = (MealRepository.Choice) hostBox.getSelectedItem();
+            hostBox.removeAllItems();
+            hostBox.addItem(new MealRepository.Choice(0, "(choose a member)"));
+            for (int m = 0; m < loaded.ids.length; m++) {
+                MealRepository.Choice choice = new MealRepository.Choice(loaded.ids[m], loaded.names[m]);
+                hostBox.addItem(choice);
+                if (selected != null && selected.id == choice.id) {
+                    hostBox.setSelectedItem(choice);
+                }
+            }
+            history = loaded;
+            simulate();
+        }, ex -> JOptionPane.showMessageDialog(this, "Failed to load history: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+        loadButton);
+    }
+
+    private void simulate() {
+        if (history == null) {
+            return;
+        }
+        MealRepository.Choice host = (MealRepository.Choice) hostBox.getSelectedItem();
+        int guests = (Integer) guestSpinner.getValue();
+        if (guests > 0 && (host == null || host.id == 0)) {
+            statsLabel.setText("Choose the member the guests eat with.");
+            return;
+        }
+        Forecast.Scenario scenario = new Forecast.Scenario(guests, host == null ? 0 : host.id,
+            1 + (Integer) priceSpinner.getValue() / 100.0);
+        Forecast.History current = history;
+        int expected = ++generation;
+        service.forecast(current, scenario).whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (expected != generation) {
+                return;
+            }
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                statsLabel.setText("Forecast failed: " + cause.getMessage());
+                return;
+            }
+            model.show(result);
+            statsLabel.setText(String.format("%d days left until %s - Meal Rate now %.2f, projected %s (%s to %s) - "
+                    + "Total Cost %s - %d trials in %d ms",
+                current.getRemainingDays(), current.getEndDate(), current.getMealRate() / Money.SCALE,
+                Money.format(result.mealRate[1]), Money.format(result.mealRate[0]), Money.format(result.mealRate[2]),
+                Money.format(result.totalCost[1]), result.trials, result.getElapsedMillis()));
+        }));
+    }
+
+    private static class ResultModel extends AbstractTableModel {
+        private Forecast.Result result;
+
+        void show(Forecast.Result result) {
+            this.result = result;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return result == null ? 0 : result.ids.length;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return COLUMN_CLASSES[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            switch (column) {
+                case 0:
+                    return result.names[row];
+                case 1:
+                    return Math.toIntExact(result.projectedMeals[row]);
+                case 2:
+                case 3:
+                case 4:
+                    return result.balances[row][column - 2];
+                case 5:
+                    return Math.round(result.deficitChance[row] * 100) + "%";
+                default:
+                    return null;
+            }
+        }
+    }
+}
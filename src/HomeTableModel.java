@@ -0,0 +1,315 @@
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Live, lazily paged model behind the home page table.
+ *
+ * Only the {@link MessSummary} and the member count are held permanently. Member rows are
+ * fetched from the database a page at a time when the table first asks for them, and a bounded
+ * LRU window of pages is kept. Sorting and filtering are done in SQL, so the model never holds
+ * every member. Numeric columns are kept as primitives and only formatted by the cell renderer.
+ *
+ * {@link #resync(MessSummary)} starts over from a new summary. As a {@link Ledger.Listener} the
+ * model hears about every ledger change, wherever the write came from, and coalesces them until
+ * the Event Dispatch Thread applies them. The changed members' cached rows are updated in place
+ * from the snapshot; the cached pages are only fetched again when the change can reorder them,
+ * or after a reload. Amounts are {@link Money} minor units; member costs are read from the
+ * summary's allocation. Change listeners are told whenever the totals change.
+ */
+public class HomeTableModel extends AbstractTableModel implements Ledger.Listener {
+
+    public static final int NAME = MemberPage.SORT_NAME;
+    public static final int DEPOSIT = MemberPage.SORT_DEPOSIT;
+    public static final int BALANCE = MemberPage.SORT_BALANCE;
+    public static final int MEALS = MemberPage.SORT_MEALS;
+    public static final int COST = 4;
+
+    private static final String[] COLUMNS = {"Member Name", "Deposit", "Balance", "Meals", "Individual Cost"};
+    private static final Class<?>[] COLUMN_CLASSES = {String.class, Long.class, Long.class, Integer.class, Long.class};
+
+    static final int PAGE_SIZE = 100;
+    private static final int MAX_PAGES = 20;
+
+    private final MemberPage.Source source;
+    private final Consumer<Throwable> onFailure;
+    private final Map<Integer, MemberPage> pages = new LinkedHashMap<>(MAX_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, MemberPage> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final Set<Integer> pendingPages = new HashSet<>();
+    private int generation;
+    private int failedGeneration = -1;
+
+    private int rowCount;
+    private String filter = "";
+    private int sortColumn = NAME;
+    private boolean ascending = true;
+
+    private MessSummary summary = new MessSummary();
+
+    // Ledger changes not yet applied on the Event Dispatch Thread, guarded by pendingLock. Null
+    // members mean a reload, after which anything may have changed.
+    private final Object pendingLock = new Object();
+    private Ledger.Snapshot pendingSnapshot;
+    private Set<Integer> pendingMembers = new HashSet<>();
+
+    /**
+     * {@code onFailure} is called on the Event Dispatch Thread when a count or a page cannot be
+     * loaded, at most once until the rows are loaded afresh.
+     */
+    public HomeTableModel(MemberPage.Source source, Consumer<Throwable> onFailure) {
+        this.source = source;
+        this.onFailure = onFailure;
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listenerList.add(ChangeListener.class, listener);
+    }
+
+    private void fireTotalsChanged() {
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener : listenerList.getListeners(ChangeListener.class)) {
+            listener.stateChanged(event);
+        }
+    }
+
+    public void resync(MessSummary snapshot) {
+        summary = snapshot;
+        fireTotalsChanged();
+        if (filter.isEmpty()) {
+            reset(snapshot.memberCount);
+        } else {
+            reload();
+        }
+    }
+
+    /**
+     * Called on the thread that published the snapshot. Keeps only the newest snapshot and every
+     * member changed since the last one the Event Dispatch Thread applied.
+     */
+    @Override
+    public void ledgerChanged(Ledger.Snapshot snapshot, int[] memberIds) {
+        boolean schedule;
+        synchronized (pendingLock) {
+            schedule = pendingSnapshot == null;
+            pendingSnapshot = snapshot;
+            if (memberIds == null) {
+                pendingMembers = null;
+            } else if (pendingMembers != null) {
+                for (int memberId : memberIds) {
+                    pendingMembers.add(memberId);
+                }
+            }
+        }
+        if (schedule) {
+            SwingUtilities.invokeLater(this::applyLedgerChanges);
+        }
+    }
+
+    private void applyLedgerChanges() {
+        Ledger.Snapshot snapshot;
+        Set<Integer> members;
+        synchronized (pendingLock) {
+            snapshot = pendingSnapshot;
+            members = pendingMembers;
+            pendingSnapshot = null;
+            pendingMembers = new HashSet<>();
+        }
+        MessSummary previous = summary;
+        summary = snapshot.summary();
+        fireTotalsChanged();
+        if (members == null) {
+            refetch();
+            return;
+        }
+        // Meal counts and the cost feed every member's cost and balance, deposits only their own.
+        boolean costsChanged = summary.totalCost != previous.totalCost || summary.totalMeals != previous.totalMeals;
+        boolean reorders = sortColumn == BALANCE ? costsChanged || !members.isEmpty()
+            : sortColumn != NAME && !members.isEmpty();
+        if (reorders) {
+            for (Integer pageIndex : new ArrayList<>(pages.keySet())) {
+                fetch(pageIndex);
+            }
+            return;
+        }
+        for (Map.Entry<Integer, MemberPage> entry : pages.entrySet()) {
+            MemberPage page = entry.getValue();
+            for (int memberId : members) {
+                int row = page.indexOf(memberId);
+                int index = snapshot.indexOf(memberId);
+                if (row >= 0 && index >= 0) {
+                    page.set(row, snapshot.deposits[index], snapshot.meals[index], snapshot.carriedCosts[index]);
+                    if (!costsChanged) {
+                        int rowIndex = entry.getKey() * PAGE_SIZE + row;
+                        fireTableRowsUpdated(rowIndex, rowIndex);
+                    }
+                }
+            }
+        }
+        if (costsChanged) {
+            fireAllRowsUpdated();
+        }
+    }
+
+    /**
+     * Re-fetches the cached pages in place, or starts over if the number of matching members
+     * changed.
+     */
+    private void refetch() {
+        int expected = generation;
+        source.countMembers(filter).whenComplete((count, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                failed(error);
+            } else if (expected == generation) {
+                if (count != rowCount) {
+                    reset(count);
+                } else {
+                    for (Integer pageIndex : new ArrayList<>(pages.keySet())) {
+                        fetch(pageIndex);
+                    }
+                }
+            }
+        }));
+    }
+
+    public void setFilter(String filter) {
+        this.filter = filter.trim();
+        reload();
+    }
+
+    /**
+     * Sorts by the given column, toggling the direction when it is already the sort column.
+     * Individual cost is proportional to meals, so it sorts as the meals column.
+     */
+    public void sortBy(int column) {
+        int sqlColumn = column == COST ? MEALS : column;
+        ascending = sqlColumn != sortColumn || !ascending;
+        sortColumn = sqlColumn;
+        reset(rowCount);
+    }
+
+    private void reload() {
+        int expected = ++generation;
+        pages.clear();
+        pendingPages.clear();
+        source.countMembers(filter).whenComplete((count, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                failed(error);
+            } else if (expected == generation) {
+                reset(count);
+            }
+        }));
+    }
+
+    private void reset(int count) {
+        generation++;
+        pages.clear();
+        pendingPages.clear();
+        rowCount = count;
+        fireTableDataChanged();
+    }
+
+    private MemberPage pageFor(int rowIndex) {
+        int pageIndex = rowIndex / PAGE_SIZE;
+        MemberPage page = pages.get(pageIndex);
+        if (page == null) {
+            fetch(pageIndex);
+        }
+        return page;
+    }
+
+    private void fetch(int pageIndex) {
+        if (pendingPages.add(pageIndex)) {
+            int expected = generation;
+            source.loadPage(filter, sortColumn, ascending, pageIndex * PAGE_SIZE, PAGE_SIZE)
+                .whenComplete((loaded, error) -> SwingUtilities.invokeLater(() -> {
+                    if (expected != generation) {
+                        return;
+                    }
+                    pendingPages.remove(pageIndex);
+                    if (error != null) {
+                        failed(error);
+                        return;
+                    }
+                    pages.put(pageIndex, loaded);
+                    int first = pageIndex * PAGE_SIZE;
+                    int last = Math.min(rowCount, first + PAGE_SIZE) - 1;
+                    if (last >= first) {
+                        fireTableRowsUpdated(first, last);
+                    }
+                }));
+        }
+    }
+
+    private void failed(Throwable error) {
+        if (failedGeneration != generation) {
+            failedGeneration = generation;
+            onFailure.accept(BusyPanel.cause(error));
+        }
+    }
+
+    public String getStatsText() {
+        return String.format("Period since %s - Total Mess Cost: %s, Meal Rate: %.2f, Mess Balance: %s",
+            summary.getPeriodStart(), Money.format(summary.getTotalCost()), summary.getMealRate() / Money.SCALE,
+            Money.format(summary.getMessBalance()));
+    }
+
+    private void fireAllRowsUpdated() {
+        if (rowCount > 0) {
+            fireTableRowsUpdated(0, rowCount - 1);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_CLASSES[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        MemberPage page = pageFor(rowIndex);
+        int i = rowIndex % PAGE_SIZE;
+        if (page == null || i >= page.size) {
+            return null;
+        }
+        switch (columnIndex) {
+            case NAME:
+                return page.names[i];
+            case DEPOSIT:
+                return page.deposits[i];
+            case BALANCE:
+                return summary.balance(page.ids[i], page.deposits[i], page.carriedCosts[i]);
+            case MEALS:
+                return page.meals[i];
+            case COST:
+                return summary.individualCost(page.ids[i]);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram in nanoseconds with log-linear buckets, in the style of
+ * HdrHistogram.
+ *
+ * Values below 128 get a bucket each. Above that, every power-of-two range is split into 64
+ * equal buckets, so any recorded value is reported to within about 1.5%. Values up to about 68
+ * seconds are tracked exactly; larger ones are counted in the top bucket. Recording is a couple
+ * of atomic increments and never allocates, so it can sit on every query.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int HALF_SUB_BUCKETS = 1 << (SUB_BUCKET_BITS - 1);
+    private static final long MAX_VALUE = (1L << 36) - 1;
+    private static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    private static int indexOf(long value) {
+        int bucket = Math.max(0, 63 - Long.numberOfLeadingZeros(value | ((1 << SUB_BUCKET_BITS) - 1)) - (SUB_BUCKET_BITS - 1));
+        return bucket * HALF_SUB_BUCKETS + (int) (value >>> bucket);
+    }
+
+    // The highest value that lands in the bucket, so percentiles never under-report.
+    private static long highestValueAt(int index) {
+        int bucket = Math.max(0, index / HALF_SUB_BUCKETS - 1);
+        long subBucket = index - (long) bucket * HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << bucket) - 1;
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long seen = max.get();
+        while (nanos > seen && !max.compareAndSet(seen, nanos)) {
+            seen = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return total.get();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public long getMeanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    /**
+     * The value at the given percentile (0 to 100), or 0 if nothing has been recorded. Reads
+     * while other threads record see a close, not exact, view.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+}
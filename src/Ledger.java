@@ -0,0 +1,390 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Process-wide in-memory copy of the ledger: the mess totals plus every member's deposit,
+ * open-period meals and carried cost, held column-wise in arrays sorted by member id.
+ *
+ * It is loaded from the database once and then kept current by the write paths in
+ * {@link MealService}, which report each committed journal entry as a delta. Every change
+ * publishes a new immutable {@link Snapshot}; arrays a change does not touch are shared with the
+ * previous snapshot. Readers take the current snapshot without locking, and listeners are told
+ * about each new one.
+ *
+ * Deltas that arrive while a reload is reading the database are held back and replayed on top of
+ * the loaded snapshot if their journal sequence number is newer than anything it saw.
+ *
+ * Another process writing to the same database (a second GUI, or the HTTP service next to one)
+ * does not report deltas here. So before serving a snapshot, at most once every
+ * {@code mealmanager.ledger.check.ms} (250 by default, 0 checks on every read), the ledger reads
+ * the newest journal sequence number, the newest member id, the open period and the mess totals
+ * in one query. If any of them differs from the snapshot, it reloads first.
+ */
+public class Ledger implements MemberPage.Source {
+
+    /**
+     * Called with every newly published snapshot, on the thread that published it. Listeners
+     * must return quickly; GUI listeners should hand off to the Event Dispatch Thread.
+     */
+    public interface Listener {
+        /**
+         * {@code memberIds} are the members whose rows changed since the previous snapshot (empty
+         * when only the mess totals did), or null after a reload, when anything may have changed.
+         */
+        void ledgerChanged(Snapshot snapshot, int[] memberIds);
+    }
+
+    public static final class Snapshot {
+        final MessSummary summary;
+        final long lastSeq;
+        final int[] ids;
+        final String[] names;
+        final String[] searchNames;
+        final long[] deposits;
+        final int[] meals;
+        final long[] carriedCosts;
+        private final ConcurrentHashMap<String, int[]> orders = new ConcurrentHashMap<>();
+
+        Snapshot(MessSummary summary, long lastSeq, int[] ids, String[] names, String[] searchNames,
+                 long[] deposits, int[] meals, long[] carriedCosts) {
+            this.summary = summary;
+            this.lastSeq = lastSeq;
+            this.ids = ids;
+            this.names = names;
+            this.searchNames = searchNames;
+            this.deposits = deposits;
+            this.meals = meals;
+            this.carriedCosts = carriedCosts;
+        }
+
+        public MessSummary summary() {
+            return summary;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        int indexOf(int memberId) {
+            return Arrays.binarySearch(ids, memberId);
+        }
+
+        public int count(String filter) {
+            return filter.isEmpty() ? ids.length : order(filter, MemberPage.SORT_NAME, true).length;
+        }
+
+        /**
+         * Returns a page in the same order the SQL-backed pages use. The sorted index for each
+         * filter and sort combination is computed once per snapshot.
+         */
+        public MemberPage page(String filter, int sortColumn, boolean ascending, int offset, int limit) {
+            int[] order = order(filter, sortColumn, ascending);
+            MemberPage page = new MemberPage(limit);
+            for (int i = offset; i < order.length && i < offset + limit; i++) {
+                int m = order[i];
+                page.add(ids[m], names[m], deposits[m], meals[m], carriedCosts[m]);
+            }
+            return page;
+        }
+
+        private int[] order(String filter, int sortColumn, boolean ascending) {
+            return orders.computeIfAbsent(sortColumn + (ascending ? "+" : "-") + filter,
+                key -> sortedIndexes(filter.toLowerCase(Locale.ROOT), sortColumn, ascending));
+        }
+
+        private int[] sortedIndexes(String filter, int sortColumn, boolean ascending) {
+            List<Integer> matches = new ArrayList<>(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                if (filter.isEmpty() || searchNames[i].contains(filter)) {
+                    matches.add(i);
+                }
+            }
+            Comparator<Integer> byColumn;
+            switch (sortColumn) {
+                case MemberPage.SORT_DEPOSIT:
+                    byColumn = Comparator.comparingLong(i -> deposits[i]);
+                    break;
+                case MemberPage.SORT_BALANCE:
+                    byColumn = Comparator.comparingLong(i -> summary.balance(ids[i], deposits[i], carriedCosts[i]));
+                    break;
+                case MemberPage.SORT_MEALS:
+                    byColumn = Comparator.comparingInt(i -> meals[i]);
+                    break;
+                default:
+                    byColumn = Comparator.comparing(i -> names[i], String.CASE_INSENSITIVE_ORDER);
+            }
+            // Ties fall back to the member id, in the same direction, like the SQL ORDER BY.
+            Comparator<Integer> order = byColumn.thenComparingInt(i -> ids[i]);
+            matches.sort(ascending ? order : order.reversed());
+
+            int[] result = new int[matches.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = matches.get(i);
+            }
+            return result;
+        }
+    }
+
+    private static final class Delta {
+        final long seq;
+        final UnaryOperator<Snapshot> change;
+
+        Delta(long seq, UnaryOperator<Snapshot> change) {
+            this.seq = seq;
+            this.change = change;
+        }
+    }
+
+    private static final long CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("mealmanager.ledger.check.ms", 250));
+
+    private final MealRepository repository;
+    private final AtomicLong nextCheck = new AtomicLong(System.nanoTime());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot current;
+
+    // Guarded by this.
+    private int generation;
+    private final List<Delta> heldDeltas = new ArrayList<>();
+    private final List<CompletableFuture<Snapshot>> waiting = new ArrayList<>();
+
+    public Ledger(MealRepository repository) {
+        this.repository = repository;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * The current snapshot, loading it first if this is the first call, or reloading it if the
+     * periodic check finds that the database has changed underneath it.
+     */
+    public CompletableFuture<Snapshot> snapshot() {
+        Snapshot snapshot = current;
+        if (snapshot != null) {
+            long now = System.nanoTime();
+            long due = nextCheck.get();
+            if (now - due < 0 || !nextCheck.compareAndSet(due, now + CHECK_NANOS)) {
+                return CompletableFuture.completedFuture(snapshot);
+            }
+            return repository.submit(conn -> changed(conn, snapshot))
+                .thenCompose(changed -> changed ? reload() : CompletableFuture.completedFuture(current));
+        }
+        synchronized (this) {
+            if (waiting.isEmpty()) {
+                return reload();
+            }
+            CompletableFuture<Snapshot> result = new CompletableFuture<>();
+            waiting.add(result);
+            return result;
+        }
+    }
+
+    /**
+     * Reloads everything from the database, for changes that are not journaled (new members,
+     * imports, closing a period) and for an explicit resync. Concurrent reloads all complete with
+     * the newest one.
+     */
+    public synchronized CompletableFuture<Snapshot> reload() {
+        int expected = ++generation;
+        CompletableFuture<Snapshot> result = new CompletableFuture<>();
+        waiting.add(result);
+        repository.submit(Ledger::load).whenComplete((loaded, error) -> loaded(expected, loaded, error));
+        return result;
+    }
+
+    private synchronized void loaded(int expected, Snapshot loaded, Throwable error) {
+        if (expected != generation) {
+            return;
+        }
+        List<CompletableFuture<Snapshot>> done = new ArrayList<>(waiting);
+        waiting.clear();
+        Snapshot snapshot = error == null ? loaded : current;
+        for (Delta delta : heldDeltas) {
+            if (snapshot != null && (error != null || delta.seq > snapshot.lastSeq)) {
+                snapshot = delta.change.apply(snapshot);
+            }
+        }
+        heldDeltas.clear();
+        if (snapshot != null && snapshot != current) {
+            publish(snapshot, null);
+        }
+        for (CompletableFuture<Snapshot> future : done) {
+            if (error == null) {
+                future.complete(snapshot);
+            } else {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+
+    public void mealsAdded(long seq, int[] memberIds, int[] mealCounts) {
+        change(seq, memberIds, snapshot -> {
+            int[] meals = snapshot.meals.clone();
+            MessSummary summary = snapshot.summary.copy();
+            for (int i = 0; i < memberIds.length; i++) {
+                summary.totalMeals += mealCounts[i];
+                summary.addMeals(memberIds[i], mealCounts[i]);
+                int index = snapshot.indexOf(memberIds[i]);
+                if (index >= 0) {
+                    meals[index] += mealCounts[i];
+                }
+            }
+            summary.allocate();
+            return new Snapshot(summary, seq, snapshot.ids, snapshot.names, snapshot.searchNames,
+                snapshot.deposits, meals, snapshot.carriedCosts);
+        });
+    }
+
+    public void depositAdded(long seq, int memberId, long amount) {
+        change(seq, new int[] {memberId}, snapshot -> {
+            long[] deposits = snapshot.deposits.clone();
+            int index = snapshot.indexOf(memberId);
+            if (index >= 0) {
+                deposits[index] += amount;
+            }
+            MessSummary summary = snapshot.summary.copy();
+            summary.totalDeposits += amount;
+            return new Snapshot(summary, seq, snapshot.ids, snapshot.names, snapshot.searchNames,
+                deposits, snapshot.meals, snapshot.carriedCosts);
+        });
+    }
+
+    public void expenseAdded(long seq, long amount) {
+        change(seq, new int[0], snapshot -> {
+            MessSummary summary = snapshot.summary.copy();
+            summary.totalCost += amount;
+            summary.allocate();
+            return new Snapshot(summary, seq, snapshot.ids, snapshot.names, snapshot.searchNames,
+                snapshot.deposits, snapshot.meals, snapshot.carriedCosts);
+        });
+    }
+
+    private synchronized void change(long seq, int[] memberIds, UnaryOperator<Snapshot> change) {
+        if (!waiting.isEmpty()) {
+            heldDeltas.add(new Delta(seq, change));
+        } else if (current != null && seq > current.lastSeq) {
+            publish(change.apply(current), memberIds);
+        }
+        // Not loaded yet, or already in the loaded snapshot: the load read this entry from the database.
+    }
+
+    private void publish(Snapshot snapshot, int[] memberIds) {
+        current = snapshot;
+        for (Listener listener : listeners) {
+            listener.ledgerChanged(snapshot, memberIds);
+        }
+    }
+
+    @Override
+    public CompletableFuture<MemberPage> loadPage(String filter, int sortColumn, boolean ascending, int offset, int limit) {
+        return snapshot().thenApply(snapshot -> snapshot.page(filter, sortColumn, ascending, offset, limit));
+    }
+
+    @Override
+    public CompletableFuture<Integer> countMembers(String filter) {
+        return snapshot().thenApply(snapshot -> snapshot.count(filter));
+    }
+
+    /**
+     * Whether the database holds anything the snapshot does not: a journal entry it has not seen,
+     * a new member, another open period or different totals. A journaled write from this process
+     * that has committed but not yet reported its delta also counts, which only costs a reload.
+     */
+    static boolean changed(Connection conn, Snapshot snapshot) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("""
+                 SELECT (SELECT IFNULL(MAX(seq), 0) FROM event_log) AS last_seq,
+                        (SELECT IFNULL(MAX(id), 0) FROM members) AS last_member,
+                        (SELECT start_date FROM billing_periods WHERE end_date IS NULL) AS period_start,
+                        total_cost, total_meals, total_deposits, carried_cost
+                 FROM mess_totals WHERE id = 1
+                 """)) {
+            if (!rs.next()) {
+                return true;
+            }
+            MessSummary summary = snapshot.summary;
+            int lastMember = snapshot.ids.length == 0 ? 0 : snapshot.ids[snapshot.ids.length - 1];
+            return rs.getLong("last_seq") > snapshot.lastSeq
+                || rs.getInt("last_member") != lastMember
+                || !String.valueOf(rs.getString("period_start")).equals(summary.periodStart)
+                || rs.getLong("total_cost") != summary.totalCost
+                || rs.getLong("total_meals") != summary.totalMeals
+                || rs.getLong("total_deposits") != summary.totalDeposits
+                || rs.getLong("carried_cost") != summary.carriedCost;
+        }
+    }
+
+    /**
+     * Reads the totals, every member and the newest journal sequence number in one read
+     * transaction, so they describe the same moment.
+     */
+    static Snapshot load(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            MessSummary summary = MealRepository.loadSummary(conn);
+
+            ResultSet rs = stmt.executeQuery("SELECT IFNULL(MAX(seq), 0) FROM event_log");
+            long lastSeq = rs.next() ? rs.getLong(1) : 0;
+
+            rs = stmt.executeQuery("""
+                SELECT m.id, m.name, m.deposit, IFNULL(t.meals, 0) AS meals, IFNULL(t.carried_cost, 0) AS carried_cost
+                FROM members m LEFT JOIN member_totals t ON t.member_id = m.id
+                ORDER BY m.id
+                """);
+            int size = 0;
+            int[] ids = new int[Math.max(16, summary.memberCount)];
+            String[] names = new String[ids.length];
+            long[] deposits = new long[ids.length];
+            int[] meals = new int[ids.length];
+            long[] carriedCosts = new long[ids.length];
+            while (rs.next()) {
+                if (size == ids.length) {
+                    int capacity = size * 2;
+                    ids = Arrays.copyOf(ids, capacity);
+                    names = Arrays.copyOf(names, capacity);
+                    deposits = Arrays.copyOf(deposits, capacity);
+                    meals = Arrays.copyOf(meals, capacity);
+                    carriedCosts = Arrays.copyOf(carriedCosts, capacity);
+                }
+                ids[size] = rs.getInt("id");
+                names[size] = rs.getString("name");
+                deposits[size] = rs.getLong("deposit");
+                meals[size] = rs.getInt("meals");
+                carriedCosts[size] = rs.getLong("carried_cost");
+                size++;
+            }
+            conn.commit();
+
+            String[] searchNames = new String[size];
+            for (int i = 0; i < size; i++) {
+                searchNames[i] = names[i].toLowerCase(Locale.ROOT);
+            }
+            summary.memberCount = size;
+            return new Snapshot(summary, lastSeq, Arrays.copyOf(ids, size), Arrays.copyOf(names, size), searchNames,
+                Arrays.copyOf(deposits, size), Arrays.copyOf(meals, size), Arrays.copyOf(carriedCosts, size));
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+}
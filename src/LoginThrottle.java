@@ -0,0 +1,60 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-username limit on failed sign-ins, kept in memory.
+ *
+ * The first {@link #FREE_FAILURES} consecutive failures for a username cost nothing extra. After
+ * that each failure locks the username for one second, doubling up to five minutes, and attempts
+ * during the lockout are refused before any password hashing is done. A successful sign-in
+ * clears the count. Unknown usernames are counted like real ones, so the throttle does not
+ * reveal which accounts exist.
+ */
+public class LoginThrottle {
+
+    static final int FREE_FAILURES = 5;
+    private static final long FIRST_LOCKOUT_MILLIS = 1_000;
+    private static final long MAX_LOCKOUT_MILLIS = 5 * 60_000;
+    private static final int MAX_TRACKED = 10_000;
+
+    private static final class Failures {
+        final int count;
+        final long lockedUntil;
+
+        Failures(int count, long lockedUntil) {
+            this.count = count;
+            this.lockedUntil = lockedUntil;
+        }
+    }
+
+    private final Map<String, Failures> failures = new ConcurrentHashMap<>();
+
+    /**
+     * Milliseconds until the username may try again, or 0 if it may try now.
+     */
+    public long retryAfterMillis(String username) {
+        Failures entry = failures.get(username);
+        return entry == null ? 0 : Math.max(0, entry.lockedUntil - System.currentTimeMillis());
+    }
+
+    public void failed(String username) {
+        long now = System.currentTimeMillis();
+        if (failures.size() >= MAX_TRACKED) {
+            // Forget usernames whose lockout has long expired so guessing names cannot grow the map.
+            failures.values().removeIf(entry -> entry.lockedUntil + MAX_LOCKOUT_MILLIS < now);
+        }
+        failures.compute(username, (name, entry) -> {
+            int count = entry == null ? 1 : entry.count + 1;
+            if (count <= FREE_FAILURES) {
+                return new Failures(count, 0);
+            }
+            int doublings = Math.min(count - FREE_FAILURES - 1, 20);
+            long lockout = Math.min(MAX_LOCKOUT_MILLIS, FIRST_LOCKOUT_MILLIS << doublings);
+            return new Failures(count, now + lockout);
+        });
+    }
+
+    public void succeeded(String username) {
+        failures.remove(username);
+    }
+}
@@ -0,0 +1,538 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Backups, archival and compaction of a mess database while it is in use.
+ *
+ * {@link #backup} copies the database with {@code VACUUM INTO}, which reads a WAL snapshot, so
+ * entries can still be written while it runs. {@link #archive} moves the meal and expense rows
+ * of closed billing periods older than a retention window into {@code <db>.archive.db}, as
+ * gzip-compressed CSV one month at a time, and adds their totals to the carry-forward row in
+ * {@code archived_totals}. Closed periods are already frozen in {@code period_snapshots} and the
+ * report rollups keep their archived days, so neither balances nor reports change.
+ *
+ * {@link #schedule} runs {@link #routine} every {@code mealmanager.maintenance.interval.hours}
+ * (24 by default, 0 turns it off). It archives when {@code mealmanager.archive.retention.days}
+ * is set, returns up to {@code mealmanager.maintenance.vacuum.pages} (2000) free pages to the
+ * file system and refreshes the planner statistics with {@code PRAGMA optimize}.
+ */
+public class Maintenance {
+
+    public static final int DEFAULT_RETENTION_DAYS = 365;
+
+    static final Path BACKUP_DIR = Path.of(System.getProperty("mealmanager.backup.dir", "backups"));
+
+    private static final int BACKUP_KEEP = Integer.getInteger("mealmanager.backup.keep", 7);
+    private static final int RETENTION_DAYS = Integer.getInteger("mealmanager.archive.retention.days", 0);
+    private static final long INTERVAL_HOURS = Long.getLong("mealmanager.maintenance.interval.hours", 24);
+    private static final long VACUUM_PAGES = Long.getLong("mealmanager.maintenance.vacuum.pages", 2000);
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    static final String ARCHIVED_THROUGH = "IFNULL((SELECT archived_through FROM archived_totals WHERE id = 1), '')";
+
+    private static final String[] SCHEMA = {
+        """
+        CREATE TABLE IF NOT EXISTS archived_totals (
+            id INTEGER PRIMARY KEY CHECK (id = 1),
+            archived_through DATE,
+            meal_rows INTEGER NOT NULL DEFAULT 0,
+            meals INTEGER NOT NULL DEFAULT 0,
+            expense_rows INTEGER NOT NULL DEFAULT 0,
+            cost INTEGER NOT NULL DEFAULT 0,
+            last_maintenance TEXT
+        );
+        """,
+        "INSERT OR IGNORE INTO archived_totals (id) VALUES (1)",
+        """
+        CREATE TABLE IF NOT EXISTS archived_member_meals (
+            member_id INTEGER PRIMARY KEY,
+            meals INTEGER NOT NULL
+        ) WITHOUT ROWID;
+        """,
+        // Archived days keep their rollups; only deleting a live row adjusts them.
+        "DROP TRIGGER IF EXISTS meals_daily_delete",
+        "DROP TRIGGER IF EXISTS expenses_daily_delete",
+        """
+        CREATE TRIGGER meals_daily_delete AFTER DELETE ON meals
+        WHEN OLD.date >\s""" + ARCHIVED_THROUGH + """
+        BEGIN
+            UPDATE daily_totals SET meals = meals - OLD.meal_count WHERE day = OLD.date;
+            UPDATE daily_member_meals SET meals = meals - OLD.meal_count WHERE day = OLD.date AND member_id = OLD.member_id;
+        END;
+        """,
+        """
+        CREATE TRIGGER expenses_daily_delete AFTER DELETE ON expenses
+        WHEN OLD.date >\s""" + ARCHIVED_THROUGH + """
+        BEGIN
+            UPDATE daily_totals SET cost = cost - OLD.amount WHERE day = OLD.date;
+        END;
+        """
+    };
+
+    private static final String ARCHIVE_SCHEMA = """
+        CREATE TABLE IF NOT EXISTS archive_batches (
+            id INTEGER PRIMARY KEY,
+            kind TEXT NOT NULL CHECK (kind IN ('meals', 'expenses')),
+            month TEXT NOT NULL,
+            through_date DATE NOT NULL,
+            row_count INTEGER NOT NULL,
+            total INTEGER NOT NULL,
+            archived_at TEXT NOT NULL DEFAULT (datetime('now')),
+            data BLOB NOT NULL
+        )
+        """;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "meal-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * What one {@link #archive} call moved. Meals are counts and cost is {@link Money} minor
+     * units.
+     */
+    public static final class ArchiveResult {
+        public final String through;
+        public final int mealRows;
+        public final long meals;
+        public final int expenseRows;
+        public final long cost;
+        public final Path archiveFile;
+        public final long pagesFreed;
+
+        ArchiveResult(String through, int mealRows, long meals, int expenseRows, long cost, Path archiveFile, long pagesFreed) {
+            this.through = through;
+            this.mealRows = mealRows;
+            this.meals = meals;
+            this.expenseRows = expenseRows;
+            this.cost = cost;
+            this.archiveFile = archiveFile;
+            this.pagesFreed = pagesFreed;
+        }
+    }
+
+    private Maintenance() {
+    }
+
+    /**
+     * Migration 11: the carry-forward totals of archived rows, and rollup delete triggers that
+     * leave archived days alone.
+     */
+    static void install(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : SCHEMA) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * The last archived day, or an empty string if nothing has been archived. Every meal and
+     * expense row left in the database is dated after it.
+     */
+    static String archivedThrough(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT " + ARCHIVED_THROUGH)) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    /**
+     * Copies the database, and its archive if there is one, into {@code directory} as
+     * {@code <mess>-<yyyyMMdd-HHmmss>.db} and keeps the newest {@code mealmanager.backup.keep}
+     * (7) backups of the mess. The copy is written under a temporary name and renamed when
+     * complete, so a backup file is never partial.
+     */
+    public static Path backup(Connection conn, Path directory) throws SQLException, IOException {
+        Path database = databaseFile(conn);
+        String tenant;
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT tenant FROM mess WHERE id = 1")) {
+            tenant = rs.next() ? rs.getString(1) : TenantRouter.DEFAULT_TENANT;
+        }
+        Files.createDirectories(directory);
+        String name = tenant + "-" + LocalDateTime.now().format(STAMP);
+        Path target = directory.resolve(name + ".db");
+        copy(conn, target);
+
+        Path archive = archiveFile(database);
+        if (Files.exists(archive)) {
+            try (Connection archiveConn = DriverManager.getConnection("jdbc:sqlite:" + archive)) {
+                copy(archiveConn, directory.resolve(name + ".archive.db"));
+            }
+        }
+        prune(directory, tenant);
+        return target;
+    }
+
+    private static void copy(Connection conn, Path target) throws SQLException, IOException {
+        Path partial = target.resolveSibling(target.getFileName() + ".part");
+        Files.deleteIfExists(partial);
+        try (PreparedStatement stmt = conn.prepareStatement("VACUUM INTO ?")) {
+            stmt.setString(1, partial.toString());
+            stmt.execute();
+        }
+        Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void prune(Path directory, String tenant) throws IOException {
+        Pattern backupName = Pattern.compile(Pattern.quote(tenant) + "-\\d{8}-\\d{6}\\.db");
+        List<String> backups = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, tenant + "-*.db")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (backupName.matcher(name).matches()) {
+                    backups.add(name);
+                }
+            }
+        }
+        // The timestamp sorts by name.
+        backups.sort(null);
+        for (int i = 0; i < backups.size() - BACKUP_KEEP; i++) {
+            String name = backups.get(i);
+            Files.deleteIfExists(directory.resolve(name));
+            Files.deleteIfExists(directory.resolve(name.substring(0, name.length() - ".db".length()) + ".archive.db"));
+        }
+    }
+
+    /**
+     * Archives the meal and expense rows dated on or before {@code cutoff} ({@code YYYY-MM-DD})
+     * that belong to closed billing periods, then compacts the database. The rows are written
+     * to the archive database and committed there before they are deleted here, and a batch
+     * left behind by an interrupted run is discarded by the next one, so no row is ever lost or
+     * archived twice.
+     *
+     * New databases are created with incremental auto-vacuum. On an older one the first archival
+     * switches to it, which takes one full {@code VACUUM} and holds off writers while it runs.
+     */
+    public static ArchiveResult archive(Connection conn, String cutoff) throws SQLException, IOException {
+        Path database = databaseFile(conn);
+        Path archiveFile = archiveFile(database);
+        String through = LocalDate.parse(BillingPeriods.openPeriodStart(conn)).minusDays(1).toString();
+        if (cutoff.compareTo(through) < 0) {
+            through = cutoff;
+        }
+
+        ArchiveResult moved;
+        // One archival per database at a time, also across processes.
+        synchronized (Maintenance.class) {
+            Path lockFile = database.resolveSibling(stem(database) + ".archive.lock");
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // Released when the channel closes.
+                channel.lock();
+                try (Connection archive = DriverManager.getConnection("jdbc:sqlite:" + archiveFile)) {
+                    String archived = archivedThrough(conn);
+                    try (Statement stmt = archive.createStatement()) {
+                        stmt.execute(ARCHIVE_SCHEMA);
+                    }
+                    try (PreparedStatement stmt = archive.prepareStatement("DELETE FROM archive_batches WHERE through_date > ?")) {
+                        stmt.setString(1, archived);
+                        stmt.executeUpdate();
+                    }
+                    if (through.compareTo(archived) <= 0) {
+                        return new ArchiveResult(archived, 0, 0, 0, 0, archiveFile, 0);
+                    }
+                    moved = writeBatches(conn, archive, archived, through, archiveFile);
+                    moveRows(conn, archived, moved);
+                }
+            }
+        }
+        long pagesFreed = compact(conn, true);
+        return new ArchiveResult(moved.through, moved.mealRows, moved.meals, moved.expenseRows, moved.cost, archiveFile, pagesFreed);
+    }
+
+    /**
+     * Writes the rows dated after {@code from} and up to {@code through} to the archive, one
+     * compressed batch per kind and month, in a single archive transaction.
+     */
+    private static ArchiveResult writeBatches(Connection conn, Connection archive, String from, String through, Path archiveFile)
+            throws SQLException, IOException {
+        int[] rows = new int[2];
+        long[] totals = new long[2];
+        archive.setAutoCommit(false);
+        try (PreparedStatement insert = archive.prepareStatement(
+                "INSERT INTO archive_batches (kind, month, through_date, row_count, total, data) VALUES (?, ?, ?, ?, ?, ?)")) {
+            CsvTransfer.Kind[] kinds = {CsvTransfer.Kind.MEALS, CsvTransfer.Kind.EXPENSES};
+            for (int k = 0; k < kinds.length; k++) {
+                CsvTransfer.Kind kind = kinds[k];
+                String table = kind == CsvTransfer.Kind.MEALS ? "meals" : "expenses";
+                String totalColumn = kind == CsvTransfer.Kind.MEALS ? "meal_count" : "amount";
+                try (PreparedStatement select = conn.prepareStatement("SELECT " + String.join(", ", kind.columns) + ", " + totalColumn
+                        + " FROM " + table + " WHERE date > ? AND date <= ? ORDER BY date, id")) {
+                    select.setString(1, from);
+                    select.setString(2, through);
+                    select.setFetchSize(1000);
+                    ResultSet rs = select.executeQuery();
+                    Batch batch = null;
+                    String[] record = new String[kind.columns.length];
+                    while (rs.next()) {
+                        String month = rs.getString("date").substring(0, 7);
+                        if (batch == null || !batch.month.equals(month)) {
+                            if (batch != null) {
+                                batch.insert(insert, table, through);
+                            }
+                            batch = new Batch(kind, month);
+                        }
+                        for (int i = 0; i < record.length; i++) {
+                            record[i] = i == kind.moneyColumn ? Money.format(rs.getLong(i + 1)) : rs.getString(i + 1);
+                        }
+                        batch.add(record, rs.getLong(totalColumn));
+                        rows[k]++;
+                        totals[k] += rs.getLong(totalColumn);
+                    }
+                    if (batch != null) {
+                        batch.insert(insert, table, through);
+                    }
+                }
+            }
+            archive.commit();
+        } catch (SQLException | IOException | RuntimeException e) {
+            archive.rollback();
+            throw e;
+        } finally {
+            archive.setAutoCommit(true);
+        }
+        return new ArchiveResult(through, rows[0], totals[0], rows[1], totals[1], archiveFile, 0);
+    }
+
+    /**
+     * Adds the archived rows to the carry-forward totals and deletes them, after checking that
+     * they are exactly the rows written to the archive.
+     */
+    private static void moveRows(Connection conn, String from, ArchiveResult moved) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement("""
+                    SELECT (SELECT COUNT(*) FROM meals WHERE date > ?1 AND date <= ?2) AS meal_rows,
+                           (SELECT IFNULL(SUM(meal_count), 0) FROM meals WHERE date > ?1 AND date <= ?2) AS meals,
+                           (SELECT COUNT(*) FROM expenses WHERE date > ?1 AND date <= ?2) AS expense_rows,
+                           (SELECT IFNULL(SUM(amount), 0) FROM expenses WHERE date > ?1 AND date <= ?2) AS cost
+                    """)) {
+                stmt.setString(1, from);
+                stmt.setString(2, moved.through);
+                ResultSet rs = stmt.executeQuery();
+                rs.next();
+                if (rs.getInt("meal_rows") != moved.mealRows || rs.getLong("meals") != moved.meals
+                        || rs.getInt("expense_rows") != moved.expenseRows || rs.getLong("cost") != moved.cost) {
+                    throw new SQLException("Rows changed while they were being archived; nothing was deleted.");
+                }
+            }
+
+            // Moving archived_through first keeps the rollup delete triggers off the archived days.
+            try (PreparedStatement stmt = conn.prepareStatement("""
+                    UPDATE archived_totals SET archived_through = ?, meal_rows = meal_rows + ?, meals = meals + ?,
+                        expense_rows = expense_rows + ?, cost = cost + ?
+                    WHERE id = 1
+                    """)) {
+                stmt.setString(1, moved.through);
+                stmt.setInt(2, moved.mealRows);
+                stmt.setLong(3, moved.meals);
+                stmt.setInt(4, moved.expenseRows);
+                stmt.setLong(5, moved.cost);
+                stmt.executeUpdate();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("""
+                    INSERT INTO archived_member_meals (member_id, meals)
+                    SELECT member_id, SUM(meal_count) FROM meals WHERE date > ? AND date <= ? GROUP BY member_id
+                    ON CONFLICT (member_id) DO UPDATE SET meals = meals + excluded.meals
+                    """)) {
+                stmt.setString(1, from);
+                stmt.setString(2, moved.through);
+                stmt.executeUpdate();
+            }
+            for (String table : new String[]{"meals", "expenses"}) {
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + table + " WHERE date > ? AND date <= ?")) {
+                    stmt.setString(1, from);
+                    stmt.setString(2, moved.through);
+                    stmt.executeUpdate();
+                }
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Returns up to {@code mealmanager.maintenance.vacuum.pages} free pages to the file system
+     * and reports how many were freed. A database still without incremental auto-vacuum is
+     * switched to it with a full {@code VACUUM} if {@code convert} is set, and left alone
+     * otherwise.
+     */
+    static long compact(Connection conn, boolean convert) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            if (pragma(stmt, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+                if (!convert) {
+                    return 0;
+                }
+                long pages = pragma(stmt, "page_count");
+                stmt.executeUpdate("PRAGMA auto_vacuum = INCREMENTAL");
+                stmt.executeUpdate("VACUUM");
+                return pages - pragma(stmt, "page_count");
+            }
+
+            long free = pragma(stmt, "freelist_count");
+            long target = Math.max(0, free - VACUUM_PAGES);
+            // Each step of the pragma frees one page, and not every driver runs it to the end,
+            // so repeat it until the free list is down to the target.
+            for (long left = free; left > target; ) {
+                stmt.executeUpdate("PRAGMA incremental_vacuum(" + (left - target) + ")");
+                long now = pragma(stmt, "freelist_count");
+                if (now >= left) {
+                    break;
+                }
+                left = now;
+            }
+            return free - pragma(stmt, "freelist_count");
+        }
+    }
+
+    /**
+     * The scheduled work, skipped until a full interval has passed since the last run, which
+     * may have been made by another process or before a restart. Returns whether it ran.
+     */
+    static boolean routine(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT last_maintenance IS NULL OR last_maintenance <= datetime('now', ?) FROM archived_totals WHERE id = 1")) {
+            stmt.setString(1, "-" + INTERVAL_HOURS + " hours");
+            ResultSet rs = stmt.executeQuery();
+            if (!rs.next() || !rs.getBoolean(1)) {
+                return false;
+            }
+        }
+
+        if (RETENTION_DAYS > 0) {
+            try {
+                archive(conn, LocalDate.now().minusDays(RETENTION_DAYS).toString());
+            } catch (IOException e) {
+                throw new SQLException("Archival failed: " + e.getMessage(), e);
+            }
+        }
+        compact(conn, false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("PRAGMA optimize");
+            stmt.executeUpdate("UPDATE archived_totals SET last_maintenance = datetime('now') WHERE id = 1");
+        }
+        return true;
+    }
+
+    /**
+     * Checks every hour, or every interval if that is shorter, whether {@link #routine} is due
+     * for the repository's database and runs it there. Returns null if maintenance is turned
+     * off.
+     */
+    static ScheduledFuture<?> schedule(MealRepository repository) {
+        if (INTERVAL_HOURS <= 0) {
+            return null;
+        }
+        long check = Math.min(TimeUnit.HOURS.toMinutes(INTERVAL_HOURS), 60);
+        // Waiting for each run keeps two runs from overlapping.
+        return SCHEDULER.scheduleWithFixedDelay(() -> {
+            try {
+                repository.submit(Maintenance::routine).join();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, 1, check, TimeUnit.MINUTES);
+    }
+
+    private static long pragma(Statement stmt, String name) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    static Path databaseFile(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA database_list")) {
+            while (rs.next()) {
+                if (rs.getString("name").equals("main")) {
+                    String file = rs.getString("file");
+                    if (file == null || file.isEmpty()) {
+                        throw new SQLException("An in-memory database has no file to back up or archive.");
+                    }
+                    return Path.of(file);
+                }
+            }
+        }
+        throw new SQLException("The database has no main schema.");
+    }
+
+    /**
+     * {@code <name>.archive.db} next to the database. The extra dot keeps it out of
+     * {@link TenantRouter#tenants()}.
+     */
+    static Path archiveFile(Path database) {
+        return database.resolveSibling(stem(database) + ".archive.db");
+    }
+
+    private static String stem(Path database) {
+        String name = database.getFileName().toString();
+        return name.endsWith(".db") ? name.substring(0, name.length() - ".db".length()) : name;
+    }
+
+    /**
+     * One kind's rows of one month as gzip-compressed CSV in the {@link CsvTransfer} export
+     * format, so a batch can be unpacked into a file that opens like any export.
+     */
+    private static final class Batch {
+        final String month;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Writer out;
+        int rows;
+        long total;
+
+        Batch(CsvTransfer.Kind kind, String month) throws IOException {
+            this.month = month;
+            this.out = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8);
+            CsvTransfer.writeRecord(out, kind.columns);
+        }
+
+        void add(String[] record, long amount) throws IOException {
+            CsvTransfer.writeRecord(out, record);
+            rows++;
+            total += amount;
+        }
+
+        void insert(PreparedStatement stmt, String kind, String through) throws SQLException, IOException {
+            out.close();
+            stmt.setString(1, kind);
+            stmt.setString(2, month);
+            stmt.setString(3, through);
+            stmt.setInt(4, rows);
+            stmt.setLong(5, total);
+            stmt.setBytes(6, bytes.toByteArray());
+            stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,341 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local HTTP/JSON front end for {@link MealService}, so several terminals (a kitchen tablet, the
+ * admin PC) can share one database writer.
+ *
+ * <pre>
+ * GET  /api/messes    every mess's totals (needs the token when one is set)
+ * GET  /api/summary
+ * GET  /api/members?filter=&amp;sort=name|deposit|balance|meals&amp;order=asc|desc&amp;offset=0&amp;limit=100
+ * POST /api/meals     {"memberId": 1, "mealCount": 2}
+ * POST /api/deposits  {"memberId": 1, "amount": 500}
+ * POST /api/expenses  {"description": "Rice", "amount": 1200}
+ * </pre>
+ *
+ * The server binds to the loopback interface unless {@code mealmanager.http.host} says
+ * otherwise. When {@code mealmanager.http.token} is set, write requests must carry it as a
+ * bearer token.
+ *
+ * Requests are served for the mess named in the {@code X-Mess} header, or the default mess
+ * without one. {@link TenantRouter} opens that mess's database for the request.
+ */
+public class MealHttpServer {
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final String[] SORT_NAMES = {"name", "deposit", "balance", "meals"};
+    private static final String MESS_HEADER = "X-Mess";
+
+    private final TenantRouter router;
+    private final String token;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public MealHttpServer(TenantRouter router, String host, int port, int threads, String token) throws IOException {
+        this.router = router;
+        this.token = token;
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "meal-http-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/api/messes", this::messes);
+        server.createContext("/api/summary", this::summary);
+        server.createContext("/api/members", this::members);
+        server.createContext("/api/meals", this::meals);
+        server.createContext("/api/deposits", this::deposits);
+        server.createContext("/api/expenses", this::expenses);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void messes(HttpExchange exchange) throws IOException {
+        respond(exchange, "GET", true, () -> {
+            StringBuilder messes = new StringBuilder("[");
+            for (TenantRouter.TenantSummary tenant : router.summaries().get()) {
+                if (messes.length() > 1) {
+                    messes.append(',');
+                }
+                Json mess = Json.object().field("mess", tenant.tenant);
+                if (tenant.summary != null) {
+                    mess.field("name", tenant.name).raw("summary", summaryJson(tenant.summary));
+                } else {
+                    mess.field("error", tenant.error);
+                }
+                messes.append(mess.end());
+            }
+            return messes.append(']').toString();
+        });
+    }
+
+    private void summary(HttpExchange exchange) throws IOException {
+        handle(exchange, "GET", service -> summaryJson(service.summary().get()));
+    }
+
+    private void members(HttpExchange exchange) throws IOException {
+        handle(exchange, "GET", service -> {
+            Map<String, String> query = query(exchange);
+            int sort = sortColumn(query.getOrDefault("sort", "name"));
+            boolean ascending = !"desc".equalsIgnoreCase(query.get("order"));
+            int offset = intParam(query, "offset", 0);
+            int limit = intParam(query, "limit", HomeTableModel.PAGE_SIZE);
+            MealService.MemberView view = service.members(query.getOrDefault("filter", ""), sort, ascending, offset, limit).get();
+
+            MemberPage page = view.page;
+            StringBuilder rows = new StringBuilder("[");
+            for (int i = 0; i < page.size; i++) {
+                if (i > 0) {
+                    rows.append(',');
+                }
+                rows.append(Json.object()
+                    .field("id", page.ids[i])
+                    .field("name", page.names[i])
+                    .money("deposit", page.deposits[i])
+                    .field("meals", page.meals[i])
+                    .money("cost", view.summary.individualCost(page.ids[i]))
+                    .money("balance", view.summary.balance(page.ids[i], page.deposits[i], page.carriedCosts[i]))
+                    .end());
+            }
+            rows.append(']');
+            return Json.object()
+                .raw("summary", summaryJson(view.summary))
+                .field("offset", offset)
+                .raw("members", rows.toString())
+                .end();
+        });
+    }
+
+    private void meals(HttpExchange exchange) throws IOException {
+        handle(exchange, "POST", service -> {
+            Map<String, Object> body = body(exchange);
+            service.addMeal(intField(body, "memberId"), intField(body, "mealCount")).get();
+            return Json.object().field("status", "ok").end();
+        });
+    }
+
+    private void deposits(HttpExchange exchange) throws IOException {
+        handle(exchange, "POST", service -> {
+            Map<String, Object> body = body(exchange);
+            service.addDeposit(intField(body, "memberId"), moneyField(body, "amount")).get();
+            return Json.object().field("status", "ok").end();
+        });
+    }
+
+    private void expenses(HttpExchange exchange) throws IOException {
+        handle(exchange, "POST", service -> {
+            Map<String, Object> body = body(exchange);
+            Object description = body.get("description");
+            service.addExpense(description instanceof String ? (String) description : null, moneyField(body, "amount")).get();
+            return Json.object().field("status", "ok").end();
+        });
+    }
+
+    private interface Action {
+        String run(MealService service) throws Exception;
+    }
+
+    private interface Response {
+        String get() throws Exception;
+    }
+
+    /**
+     * Runs the action against the requested mess's service, holding the mess open meanwhile.
+     */
+    private void handle(HttpExchange exchange, String method, Action action) throws IOException {
+        respond(exchange, method, method.equals("POST"), () -> {
+            String tenant = exchange.getRequestHeaders().getFirst(MESS_HEADER);
+            try (TenantRouter.Lease lease = router.acquire(tenant == null ? TenantRouter.DEFAULT_TENANT : tenant).get()) {
+                return action.run(lease.service());
+            }
+        });
+    }
+
+    private void respond(HttpExchange exchange, String method, boolean needsToken, Response action) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals(method)) {
+                exchange.getResponseHeaders().set("Allow", method);
+                send(exchange, 405, error("Use " + method + "."));
+                return;
+            }
+            if (needsToken && !authorized(exchange)) {
+                send(exchange, 401, error("Missing or invalid token."));
+                return;
+            }
+            String response;
+            try {
+                response = action.get();
+            } catch (ExecutionException | CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof IllegalArgumentException) {
+                    send(exchange, 400, error(cause.getMessage()));
+                } else {
+                    cause.printStackTrace();
+                    send(exchange, 500, error("Database error: " + cause.getMessage()));
+                }
+                return;
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, error(e.getMessage()));
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                send(exchange, 503, error("Server is shutting down."));
+                return;
+            } catch (Exception e) {
+                e.printStackTrace();
+                send(exchange, 500, error(e.getMessage()));
+                return;
+            }
+            send(exchange, 200, response);
+        }
+    }
+
+    private boolean authorized(HttpExchange exchange) {
+        if (token == null || token.isEmpty()) {
+            return true;
+        }
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        return header != null && MessageDigest.isEqual(header.getBytes(StandardCharsets.UTF_8),
+            ("Bearer " + token).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String error(String message) {
+        return Json.object().field("error", message).end();
+    }
+
+    private static String summaryJson(MessSummary summary) {
+        return Json.object()
+            .field("periodStart", summary.getPeriodStart())
+            .money("totalCost", summary.getTotalCost())
+            .field("totalMeals", summary.getTotalMeals())
+            .field("mealRate", summary.getMealRate() / Money.SCALE)
+            .money("messBalance", summary.getMessBalance())
+            .field("memberCount", summary.getMemberCount())
+            .end();
+    }
+
+    private static Map<String, Object> body(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("Request body is too large.");
+            }
+            return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> values = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) {
+            return values;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            values.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static int sortColumn(String name) {
+        for (int i = 0; i < SORT_NAMES.length; i++) {
+            if (SORT_NAMES[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown sort column: " + name);
+    }
+
+    private static int intParam(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be an integer.");
+        }
+    }
+
+    private static double numberField(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof Double)) {
+            throw new IllegalArgumentException(name + " must be a number.");
+        }
+        return (Double) value;
+    }
+
+    private static long moneyField(Map<String, Object> body, String name) {
+        return Money.fromDouble(numberField(body, name));
+    }
+
+    private static int intField(Map<String, Object> body, String name) {
+        double value = numberField(body, name);
+        if (value != Math.rint(value) || Math.abs(value) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(name + " must be an integer.");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Runs the API without the Swing client: {@code java -cp bin:sqlite-jdbc.jar MealHttpServer [port]}.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        String host = System.getProperty("mealmanager.http.host", "127.0.0.1");
+        int threads = Integer.getInteger("mealmanager.http.threads", 16);
+        MealHttpServer httpServer = new MealHttpServer(TenantRouter.getInstance(), host, port, threads,
+            System.getProperty("mealmanager.http.token"));
+        httpServer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(httpServer::stop, "meal-http-shutdown"));
+        System.out.println("Meal Manager API listening on http://" + host + ":" + httpServer.getPort() + "/api/");
+    }
+}
@@ -1,76 +1,64 @@
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.io.File;
+import java.io.IOException;
 import java.sql.*;
-import java.util.ArrayList;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-abstract class User {
-    protected String username;
-    protected String password;
+public class MealManagerGUI {
 
-    public User(String username, String password) {
-        this.username = username;
-        this.password = password;
-    }
+    private static final class Session {
+        final User user;
+        final TenantRouter.Lease lease;
 
-    public String getUsername() {
-        return username;
+        Session(User user, TenantRouter.Lease lease) {
+            this.user = user;
+            this.lease = lease;
+        }
     }
 
-    public abstract String getRoleSpecificOptions();
-}
+    private static final String DATABASE_URL = "jdbc:sqlite:meal_manager.db";
+    private static final int POOL_SIZE = Integer.getInteger("mealmanager.pool.size", 4);
 
-class AdminUser extends User {
-    public AdminUser(String username, String password) {
-        super(username, password);
-    }
+    private static ConnectionPool pool;
 
-    @Override
-    public String getRoleSpecificOptions() {
-        return "Admin Options: Manage Members, Add Expenses, Add Deposits.";
+    static Connection openConnection() throws SQLException {
+        return getPool().getConnection();
     }
-}
 
-class RegularUser extends User {
-    public RegularUser(String username, String password) {
-        super(username, password);
+    static Connection openDedicatedConnection() throws SQLException {
+        return getPool().openDedicated();
     }
 
-    @Override
-    public String getRoleSpecificOptions() {
-        return "User Options: View Records.";
+    /**
+     * The default mess's pool, or null if it has not been opened yet.
+     */
+    static synchronized ConnectionPool currentPool() {
+        return pool;
     }
-}
-
-public class MealManagerGUI {
-
-    private static final String DATABASE_URL = "jdbc:sqlite:meal_manager.db";
-
-    public static Connection initializeDatabase() {
-        Connection conn = null;
-        try {
-            File dbFile = new File("meal_manager.db");
 
-            // Check if database file exists
-            if (!dbFile.exists()) {
-                System.out.println("Database file not found. Creating a new database...");
-                conn = DriverManager.getConnection(DATABASE_URL);
-                createDatabase(conn);
-            } else {
-                System.out.println("Database file exists. Connecting to the database...");
-                conn = DriverManager.getConnection(DATABASE_URL);
+    private static synchronized ConnectionPool getPool() throws SQLException {
+        if (pool == null) {
+            ConnectionPool newPool = new ConnectionPool(DATABASE_URL, POOL_SIZE);
+            try (Connection conn = newPool.getConnection()) {
+                SchemaMigrations.migrate(conn);
             }
-        } catch (SQLException e) {
-            System.out.println("Database connection failed.");
-            e.printStackTrace();
+            pool = newPool;
+            Runtime.getRuntime().addShutdownHook(new Thread(newPool::close));
+            MealRepository.getInstance().scheduleMaintenance();
         }
-        return conn;
+        return pool;
     }
 
-    private static void createDatabase(Connection conn) {
+    static void createDatabase(Connection conn) throws SQLException {
         String createUsersTable = """
             CREATE TABLE IF NOT EXISTS users (
                 id INTEGER PRIMARY KEY AUTOINCREMENT,
@@ -120,16 +108,11 @@ public class MealManagerGUI {
             stmt.execute(createMealsTable);
             stmt.execute(createExpensesTable);
             stmt.execute(insertDefaultUser);
-
-            System.out.println("Database and tables created successfully.");
-        } catch (SQLException e) {
-            System.out.println("An error occurred while creating the database.");
-            e.printStackTrace();
         }
     }
 
-    private static void showRegistrationPage() {
-        JFrame registrationFrame = new JFrame("Register");
+    private static void showRegistrationPage(String tenant) {
+        JFrame registrationFrame = new JFrame("Register - " + tenant);
         registrationFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         registrationFrame.setSize(400, 250);
 
@@ -148,6 +131,7 @@ public class MealManagerGUI {
         JPasswordField confirmPassField = new JPasswordField();
 
         JButton registerButton = new JButton("Register");
+        BusyPanel busyPanel = new BusyPanel();
 
         panel.add(nameLabel);
         panel.add(nameField);
@@ -160,7 +144,8 @@ public class MealManagerGUI {
         panel.add(new JLabel());
         panel.add(registerButton);
 
-        registrationFrame.add(panel);
+        registrationFrame.add(panel, BorderLayout.CENTER);
+        registrationFrame.add(busyPanel, BorderLayout.SOUTH);
         registrationFrame.setVisible(true);
 
         registerButton.addActionListener(e -> {
@@ -174,17 +159,15 @@ public class MealManagerGUI {
                 return;
             }
 
-            try (Connection conn = initializeDatabase(); PreparedStatement stmt = conn.prepareStatement("INSERT INTO users (name, username, password) VALUES (?, ?, ?)");) {
-                stmt.setString(1, name);
-                stmt.setString(2, username);
-                stmt.setString(3, password);
-                stmt.executeUpdate();
-
-                JOptionPane.showMessageDialog(registrationFrame, "Registration successful. You can now log in.", "Success", JOptionPane.INFORMATION_MESSAGE);
-                registrationFrame.dispose();
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(registrationFrame, "Registration failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            CompletableFuture<Void> registered = TenantRouter.getInstance().acquire(tenant).thenCompose(lease ->
+                lease.service().register(name, username, password).whenComplete((result, error) -> lease.close()));
+            busyPanel.run("Registering...", registered,
+                result -> {
+                    JOptionPane.showMessageDialog(registrationFrame, "Registration successful. You can now log in.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                    registrationFrame.dispose();
+                },
+                ex -> JOptionPane.showMessageDialog(registrationFrame, "Registration failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+                registerButton);
         });
     }
 
@@ -193,7 +176,16 @@ public class MealManagerGUI {
         loginFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         loginFrame.setSize(400, 250);
 
-        JPanel panel = new JPanel(new GridLayout(4, 2));
+        JPanel panel = new JPanel(new GridLayout(5, 2));
+
+        JLabel messLabel = new JLabel("Mess:");
+        String[] messes = {TenantRouter.DEFAULT_TENANT};
+        try {
+            messes = TenantRouter.getInstance().tenants().toArray(new String[0]);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(loginFrame, "Failed to list messes: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+        JComboBox<String> messBox = new JComboBox<>(messes);
 
         JLabel userLabel = new JLabel("Username:");
         JTextField userField = new JTextField();
@@ -203,7 +195,10 @@ public class MealManagerGUI {
 
         JButton loginButton = new JButton("Login");
         JButton registerButton = new JButton("Register");
+        BusyPanel busyPanel = new BusyPanel();
 
+        panel.add(messLabel);
+        panel.add(messBox);
         panel.add(userLabel);
         panel.add(userField);
         panel.add(passLabel);
@@ -213,175 +208,132 @@ public class MealManagerGUI {
         panel.add(new JLabel());
         panel.add(registerButton);
 
-        loginFrame.add(panel);
+        loginFrame.add(panel, BorderLayout.CENTER);
+        loginFrame.add(busyPanel, BorderLayout.SOUTH);
         loginFrame.setVisible(true);
 
         loginButton.addActionListener(e -> {
+            String tenant = (String) messBox.getSelectedItem();
             String username = userField.getText();
             String password = new String(passField.getPassword());
 
-            try (Connection conn = initializeDatabase(); PreparedStatement stmt = conn.prepareStatement("SELECT * FROM users WHERE username = ? AND password = ?");) {
-                stmt.setString(1, username);
-                stmt.setString(2, password);
-
-                ResultSet rs = stmt.executeQuery();
-
-                if (rs.next()) {
-                    String userRole = "Regular";
-                    if (rs.getString("username").equalsIgnoreCase("admin")) {
-                        userRole = "Admin";
+            // The lease keeps the mess open for as long as the home page shows it.
+            CompletableFuture<Session> signedIn = TenantRouter.getInstance().acquire(tenant).thenCompose(lease ->
+                lease.service().login(username, password).handle((user, error) -> {
+                    if (user == null) {
+                        lease.close();
                     }
-
-                    User user = userRole.equals("Admin") ? new AdminUser(username, password) : new RegularUser(username, password);
-                    JOptionPane.showMessageDialog(loginFrame, "Welcome, " + user.getUsername() + ". " + user.getRoleSpecificOptions());
-                    loginFrame.dispose();
-                    showHomePage(user);
-                } else {
-                    JOptionPane.showMessageDialog(loginFrame, "Invalid credentials", "Error", JOptionPane.ERROR_MESSAGE);
-                }
-            } catch (SQLException ex) {
-                ex.printStackTrace();
-            }
+                    if (error != null) {
+                        throw new CompletionException(error);
+                    }
+                    return user == null ? null : new Session(user, lease);
+                }));
+            busyPanel.run("Signing in...", signedIn,
+                session -> {
+                    if (session != null) {
+                        User user = session.user;
+                        JOptionPane.showMessageDialog(loginFrame, "Welcome, " + user.getUsername() + ". " + user.getRoleSpecificOptions());
+                        loginFrame.dispose();
+                        showHomePage(session);
+                    } else {
+                        JOptionPane.showMessageDialog(loginFrame, "Invalid credentials", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                },
+                ex -> JOptionPane.showMessageDialog(loginFrame, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+                loginButton, registerButton);
         });
 
         registerButton.addActionListener(e -> {
             loginFrame.dispose();
-            showRegistrationPage();
+            showRegistrationPage((String) messBox.getSelectedItem());
         });
     }
 
-    private static void showHomePage(User user) {
-        JFrame homeFrame = new JFrame("Meal Manager - Home");
+    private static void showHomePage(Session session) {
+        User user = session.user;
+        MealService service = session.lease.service();
+
+        JFrame homeFrame = new JFrame("Meal Manager - " + session.lease.getName());
         homeFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         homeFrame.setSize(1000, 600);
 
         JPanel panel = new JPanel(new BorderLayout());
 
-        JTable table = new JTable();
-        DefaultTableModel model = new DefaultTableModel();
-        model.addColumn("Member Name");
-        model.addColumn("Deposit");
-        model.addColumn("Balance");
-        model.addColumn("Meals");
-        model.addColumn("Individual Cost");
-
-        double totalCost = 0;
-        double totalMeals = 0;
-        double totalDeposits = 0;
-
-        try (Connection conn = initializeDatabase(); Statement stmt = conn.createStatement()) {
-            // Calculate totals
-            ResultSet costResult = stmt.executeQuery("SELECT IFNULL(SUM(amount), 0) AS totalCost FROM expenses");
-            if (costResult.next()) {
-                totalCost = costResult.getDouble("totalCost");
-            }
-
-            ResultSet mealResult = stmt.executeQuery("SELECT IFNULL(SUM(meal_count), 0) AS totalMeals FROM meals");
-            if (mealResult.next()) {
-                totalMeals = mealResult.getDouble("totalMeals");
+        HomeTableModel model = new HomeTableModel(service, ex ->
+            JOptionPane.showMessageDialog(homeFrame, "Failed to load members: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
+        JTable table = new JTable(model);
+        table.setDefaultRenderer(Long.class, new AmountRenderer());
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = table.columnAtPoint(e.getPoint());
+                if (column >= 0) {
+                    model.sortBy(table.convertColumnIndexToModel(column));
+                }
             }
+        });
+        JScrollPane tableScroll = new JScrollPane(table);
 
-            ResultSet depositResult = stmt.executeQuery("SELECT IFNULL(SUM(deposit), 0) AS totalDeposits FROM members");
-            if (depositResult.next()) {
-                totalDeposits = depositResult.getDouble("totalDeposits");
-            }
+        JTextField filterField = new JTextField();
+        filterField.addActionListener(e -> model.setFilter(filterField.getText()));
+        JPanel filterPanel = new JPanel(new BorderLayout(5, 0));
+        filterPanel.add(new JLabel("Find member:"), BorderLayout.WEST);
+        filterPanel.add(filterField, BorderLayout.CENTER);
 
-            // Fetch member details
-            String query = "SELECT m.name, m.deposit, m.balance, IFNULL(SUM(ml.meal_count), 0) AS meals FROM members m " +
-                           "LEFT JOIN meals ml ON m.id = ml.member_id GROUP BY m.id";
-            ResultSet rs = stmt.executeQuery(query);
-
-            while (rs.next()) {
-                double individualMeals = rs.getDouble("meals");
-                double individualCost = (totalMeals > 0) ? (individualMeals / totalMeals) * totalCost : 0;
-
-                model.addRow(new Object[]{
-                    rs.getString("name"),
-                    rs.getDouble("deposit"),
-                    String.format("%.2f", rs.getDouble("deposit")-individualCost),
-                    rs.getInt("meals"),
-                    String.format("%.2f", individualCost)
-                });
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        JLabel statsLabel = new JLabel();
+        statsLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        model.addChangeListener(e -> statsLabel.setText(model.getStatsText()));
 
-        table.setModel(model);
-        JScrollPane tableScroll = new JScrollPane(table);
+        service.addLedgerListener(model);
 
-        JLabel statsLabel = new JLabel(String.format("Total Mess Cost: %.2f, Meal Rate: %.2f, Mess Balance: %.2f", 
-            totalCost, (totalMeals > 0 ? totalCost / totalMeals : 0), totalDeposits - totalCost));
-        statsLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        BusyPanel busyPanel = new BusyPanel();
 
-        JPanel buttonPanel = new JPanel(new GridLayout(1, 4));
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 7));
 
         JButton addMemberButton = new JButton("Add Member");
         addMemberButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                try (Connection conn = initializeDatabase()) {
-                    // Fetch the list of registered users who are not already members
-                    PreparedStatement stmt = conn.prepareStatement(
-                        "SELECT id, name FROM users WHERE id NOT IN (SELECT user_id FROM members);"
-                    );
-
-                    ResultSet rs = stmt.executeQuery();
-
-                    // Populate the drop-down list with usernames
-                    ArrayList<Integer> userIds = new ArrayList<>();
-                    JComboBox<String> userDropdown = new JComboBox<>();
-
-                    while (rs.next()) {
-                        userIds.add(rs.getInt("id"));
-                        userDropdown.addItem(rs.getString("name"));
-                    }
-
-                    if (userIds.isEmpty()) {
+                // Fetch the list of registered users who are not already members
+                busyPanel.run("Loading users...", service.findUsersWithoutMembership(), candidates -> {
+                    if (candidates.isEmpty()) {
                         JOptionPane.showMessageDialog(homeFrame, "No users available to add as members.", "Info", JOptionPane.INFORMATION_MESSAGE);
                         return;
                     }
 
                     // Show the drop-down list to the admin
+                    JComboBox<MealRepository.Choice> userDropdown = new JComboBox<>(candidates.toArray(new MealRepository.Choice[0]));
                     int option = JOptionPane.showConfirmDialog(
                         homeFrame, 
                         userDropdown, 
                         "Select a User to Add as Member", 
                         JOptionPane.OK_CANCEL_OPTION
                     );
+                    if (option != JOptionPane.OK_OPTION) {
+                        return;
+                    }
+                    MealRepository.Choice selected = (MealRepository.Choice) userDropdown.getSelectedItem();
 
-                    if (option == JOptionPane.OK_OPTION) {
-                        int selectedIndex = userDropdown.getSelectedIndex();
-                        int selectedUserId = userIds.get(selectedIndex);
-
-                        // Prompt for deposit amount
-                        String depositStr = JOptionPane.showInputDialog(homeFrame, "Enter Initial Deposit:");
-                        if (depositStr != null) {
-                            try {
-                                double deposit = Double.parseDouble(depositStr);
-
-                                // Add the selected user as a member
-                                PreparedStatement addMemberStmt = conn.prepareStatement(
-                                    "INSERT INTO members (user_id, name, deposit, balance) VALUES (?, ?, ?, ?);"
-                                );
-                                addMemberStmt.setInt(1, selectedUserId);
-                                addMemberStmt.setString(2, (String) userDropdown.getSelectedItem());
-                                addMemberStmt.setDouble(3, deposit);
-                                addMemberStmt.setDouble(4, deposit);
-
-                                addMemberStmt.executeUpdate();
-                                JOptionPane.showMessageDialog(homeFrame, "Member added successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
-
-                                showHomePage(user); // Refresh the page
-                                homeFrame.dispose();
-                            } catch (NumberFormatException ex) {
-                                JOptionPane.showMessageDialog(homeFrame, "Invalid deposit amount.", "Error", JOptionPane.ERROR_MESSAGE);
-                            }
-                        }
+                    // Prompt for deposit amount
+                    String depositStr = JOptionPane.showInputDialog(homeFrame, "Enter Initial Deposit:");
+                    if (depositStr == null) {
+                        return;
                     }
-                } catch (SQLException ex) {
-                    JOptionPane.showMessageDialog(homeFrame, "Failed to fetch users or add member: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                    long deposit;
+                    try {
+                        deposit = Money.parse(depositStr);
+                    } catch (NumberFormatException ex) {
+                        JOptionPane.showMessageDialog(homeFrame, "Invalid deposit amount.", "Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+
+                    // Add the selected user as a member
+                    busyPanel.run("Adding member...", service.addMember(selected.id, selected.name, deposit), memberId -> {
+                        JOptionPane.showMessageDialog(homeFrame, "Member added successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                    }, ex -> JOptionPane.showMessageDialog(homeFrame, "Failed to add member: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+                    buttonPanel.getComponents());
+                }, ex -> JOptionPane.showMessageDialog(homeFrame, "Failed to fetch users: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+                buttonPanel.getComponents());
             }
         });
 
@@ -398,17 +350,10 @@ public class MealManagerGUI {
                         int memberId = Integer.parseInt(memberIdStr);
                         int mealCount = Integer.parseInt(mealCountStr);
 
-                        try (Connection conn = initializeDatabase(); PreparedStatement stmt = conn.prepareStatement("INSERT INTO meals (member_id, meal_count, date) VALUES (?, ?, date('now'));");) {
-                            stmt.setInt(1, memberId);
-                            stmt.setInt(2, mealCount);
-
-                            stmt.executeUpdate();
+                        busyPanel.run("Saving meal...", service.addMeal(memberId, mealCount), result -> {
                             JOptionPane.showMessageDialog(homeFrame, "Meal added successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
-                            showHomePage(user); // Refresh the page
-                            homeFrame.dispose();
-                        } catch (SQLException ex) {
-                            JOptionPane.showMessageDialog(homeFrame, "Failed to add meal: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                        }
+                        }, ex -> JOptionPane.showMessageDialog(homeFrame, "Failed to add meal: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+                        buttonPanel.getComponents());
                     } catch (NumberFormatException ex) {
                         JOptionPane.showMessageDialog(homeFrame, "Invalid input for member ID or meal count.", "Error", JOptionPane.ERROR_MESSAGE);
                     }
@@ -416,6 +361,12 @@ public class MealManagerGUI {
             }
         });
 
+        JButton bulkMealButton = new JButton("Bulk Meals");
+        bulkMealButton.addActionListener(e -> busyPanel.run("Loading members...", service.listMembers(),
+            members -> new BulkMealDialog(homeFrame, service, members, busyPanel, buttonPanel.getComponents()).setVisible(true),
+            ex -> JOptionPane.showMessageDialog(homeFrame, "Failed to load members: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+            buttonPanel.getComponents()));
+
         JButton addDepositButton = new JButton("Add Deposit");
         addDepositButton.addActionListener(new ActionListener() {
             @Override
@@ -426,20 +377,12 @@ public class MealManagerGUI {
                 if (memberIdStr != null && depositStr != null) {
                     try {
                         int memberId = Integer.parseInt(memberIdStr);
-                        double deposit = Double.parseDouble(depositStr);
-
-                        try (Connection conn = initializeDatabase(); PreparedStatement stmt = conn.prepareStatement("UPDATE members SET deposit = deposit + ?, balance = balance + ? WHERE id = ?;");) {
-                            stmt.setDouble(1, deposit);
-                            stmt.setDouble(2, deposit);
-                            stmt.setInt(3, memberId);
+                        long deposit = Money.parse(depositStr);
 
-                            stmt.executeUpdate();
+                        busyPanel.run("Saving deposit...", service.addDeposit(memberId, deposit), result -> {
                             JOptionPane.showMessageDialog(homeFrame, "Deposit added successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
-                            showHomePage(user); // Refresh the page
-                            homeFrame.dispose();
-                        } catch (SQLException ex) {
-                            JOptionPane.showMessageDialog(homeFrame, "Failed to add deposit: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                        }
+                        }, ex -> JOptionPane.showMessageDialog(homeFrame, "Failed to add deposit: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+                        buttonPanel.getComponents());
                     } catch (NumberFormatException ex) {
                         JOptionPane.showMessageDialog(homeFrame, "Invalid input for member ID or deposit amount.", "Error", JOptionPane.ERROR_MESSAGE);
                     }
@@ -456,19 +399,12 @@ public class MealManagerGUI {
 
                 if (description != null && amountStr != null) {
                     try {
-                        double amount = Double.parseDouble(amountStr);
+                        long amount = Money.parse(amountStr);
 
-                        try (Connection conn = initializeDatabase(); PreparedStatement stmt = conn.prepareStatement("INSERT INTO expenses (description, amount, date) VALUES (?, ?, date('now'));");) {
-                            stmt.setString(1, description);
-                            stmt.setDouble(2, amount);
-
-                            stmt.executeUpdate();
+                        busyPanel.run("Saving expense...", service.addExpense(description, amount), result -> {
                             JOptionPane.showMessageDialog(homeFrame, "Expense added successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
-                            showHomePage(user); // Refresh the page
-                            homeFrame.dispose();
-                        } catch (SQLException ex) {
-                            JOptionPane.showMessageDialog(homeFrame, "Failed to add expense: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                        }
+                        }, ex -> JOptionPane.showMessageDialog(homeFrame, "Failed to add expense: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+                        buttonPanel.getComponents());
                     } catch (NumberFormatException ex) {
                         JOptionPane.showMessageDialog(homeFrame, "Invalid input for expense amount.", "Error", JOptionPane.ERROR_MESSAGE);
                     }
@@ -476,27 +412,212 @@ public class MealManagerGUI {
             }
         });
 
+        JButton closeMonthButton = new JButton("Close Month");
+        closeMonthButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                String endDate = (String) JOptionPane.showInputDialog(homeFrame, "Close the billing period on (YYYY-MM-DD):", "Close Month",
+                    JOptionPane.QUESTION_MESSAGE, null, null, YearMonth.now().minusMonths(1).atEndOfMonth().toString());
+
+                if (endDate != null) {
+                    try {
+                        LocalDate.parse(endDate);
+                    } catch (DateTimeParseException ex) {
+                        JOptionPane.showMessageDialog(homeFrame, "Invalid date.", "Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+
+                    busyPanel.run("Closing period...", service.closePeriod(endDate), snapshot -> {
+                        model.resync(snapshot);
+                        JOptionPane.showMessageDialog(homeFrame, "Billing period closed.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                    }, ex -> JOptionPane.showMessageDialog(homeFrame, "Failed to close period: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+                    buttonPanel.getComponents());
+                }
+            }
+        });
+
+        JButton resyncButton = new JButton("Resync");
+        resyncButton.addActionListener(e -> reload(homeFrame, model, busyPanel, buttonPanel, service.resync()));
+
         if (user instanceof RegularUser) {
             addMemberButton.setEnabled(false);
             addMealButton.setEnabled(false);
+            bulkMealButton.setEnabled(false);
             addDepositButton.setEnabled(false);
             addExpenseButton.setEnabled(false);
+            closeMonthButton.setEnabled(false);
         }
 
         buttonPanel.add(addMemberButton);
         buttonPanel.add(addMealButton);
+        buttonPanel.add(bulkMealButton);
         buttonPanel.add(addDepositButton);
         buttonPanel.add(addExpenseButton);
+        buttonPanel.add(closeMonthButton);
+        buttonPanel.add(resyncButton);
+
+        JMenuItem importItem = new JMenuItem("Import CSV...");
+        importItem.addActionListener(e -> {
+            CsvTransfer.Kind kind = (CsvTransfer.Kind) JOptionPane.showInputDialog(homeFrame, "What does the file contain?", "Import CSV",
+                JOptionPane.QUESTION_MESSAGE, null, CsvTransfer.Kind.values(), CsvTransfer.Kind.MEALS);
+            JFileChooser chooser = new JFileChooser();
+            if (kind == null || chooser.showOpenDialog(homeFrame) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+
+            busyPanel.run("Importing " + kind + "...", service.importCsv(kind, chooser.getSelectedFile().toPath()), result -> {
+                StringBuilder message = new StringBuilder("Imported " + result.imported + " rows.");
+                if (!result.errors.isEmpty()) {
+                    message.append(" ").append(result.errors.size()).append(" rows were skipped:\n");
+                    result.errors.forEach(error -> message.append(error).append('\n'));
+                }
+                JTextArea details = new JTextArea(message.toString(), 15, 60);
+                details.setEditable(false);
+                JOptionPane.showMessageDialog(homeFrame, new JScrollPane(details), "Import CSV",
+                    result.errors.isEmpty() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+                reload(homeFrame, model, busyPanel, buttonPanel, service.summary());
+            }, ex -> JOptionPane.showMessageDialog(homeFrame, "Import failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+            buttonPanel.getComponents());
+        });
+
+        JMenuItem exportItem = new JMenuItem("Export CSV...");
+        exportItem.addActionListener(e -> {
+            CsvTransfer.Kind kind = (CsvTransfer.Kind) JOptionPane.showInputDialog(homeFrame, "What do you want to export?", "Export CSV",
+                JOptionPane.QUESTION_MESSAGE, null, CsvTransfer.Kind.values(), CsvTransfer.Kind.MEALS);
+            JFileChooser chooser = new JFileChooser();
+            if (kind == null) {
+                return;
+            }
+            chooser.setSelectedFile(new File(kind.name().toLowerCase() + ".csv"));
+            if (chooser.showSaveDialog(homeFrame) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+
+            busyPanel.run("Exporting " + kind + "...", service.exportCsv(kind, chooser.getSelectedFile().toPath()),
+                rows -> JOptionPane.showMessageDialog(homeFrame, "Exported " + rows + " rows.", "Export CSV", JOptionPane.INFORMATION_MESSAGE),
+                ex -> JOptionPane.showMessageDialog(homeFrame, "Export failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+                buttonPanel.getComponents());
+        });
+
+        JMenuItem reportsItem = new JMenuItem("Reports...");
+        reportsItem.addActionListener(e -> busyPanel.run("Loading members...", service.listMembers(),
+            members -> new ReportDialog(homeFrame, service, members).setVisible(true),
+            ex -> JOptionPane.showMessageDialog(homeFrame, "Failed to load members: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+            buttonPanel.getComponents()));
+
+        JMenuItem forecastItem = new JMenuItem("Forecast...");
+        forecastItem.addActionListener(e -> new ForecastDialog(homeFrame, service).setVisible(true));
+
+        JMenuItem backupItem = new JMenuItem("Back Up Now");
+        backupItem.addActionListener(e -> busyPanel.run("Backing up...", service.backup(),
+            file -> JOptionPane.showMessageDialog(homeFrame, "Backed up to " + file.toAbsolutePath() + ".", "Back Up",
+                JOptionPane.INFORMATION_MESSAGE),
+            ex -> JOptionPane.showMessageDialog(homeFrame, "Backup failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+            buttonPanel.getComponents()));
+
+        JMenuItem archiveItem = new JMenuItem("Archive Old Rows...");
+        archiveItem.addActionListener(e -> {
+            String days = (String) JOptionPane.showInputDialog(homeFrame,
+                "Move meals and expenses of closed billing periods older than this many days to the archive:", "Archive Old Rows",
+                JOptionPane.QUESTION_MESSAGE, null, null, String.valueOf(Maintenance.DEFAULT_RETENTION_DAYS));
+            if (days == null) {
+                return;
+            }
+            int retentionDays;
+            try {
+                retentionDays = Integer.parseInt(days.trim());
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(homeFrame, "Enter a number of days.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            busyPanel.run("Archiving...", service.archive(retentionDays), result -> JOptionPane.showMessageDialog(homeFrame,
+                    result.mealRows + result.expenseRows == 0
+                        ? "Nothing to archive. Rows are archived through " + (result.through.isEmpty() ? "-" : result.through) + "."
+                        : String.format("Archived %d meal rows (%d meals) and %d expenses (%s) through %s to %s.", result.mealRows,
+                            result.meals, result.expenseRows, Money.format(result.cost), result.through, result.archiveFile),
+                    "Archive Old Rows", JOptionPane.INFORMATION_MESSAGE),
+                ex -> JOptionPane.showMessageDialog(homeFrame, "Archival failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+                buttonPanel.getComponents());
+        });
+
+        JMenu dataMenu = new JMenu("Data");
+        dataMenu.add(importItem);
+        dataMenu.add(exportItem);
+        dataMenu.addSeparator();
+        dataMenu.add(reportsItem);
+        dataMenu.add(forecastItem);
+        dataMenu.addSeparator();
+        dataMenu.add(backupItem);
+        dataMenu.add(archiveItem);
+
+        // Diagnostics share the frame with the member table rather than opening a window, so
+        // the numbers can be watched while using the buttons.
+        JSplitPane diagnosticsSplit = new JSplitPane(JSplitPane.VERTICAL_SPLIT);
+        diagnosticsSplit.setResizeWeight(0.6);
+        JCheckBoxMenuItem diagnosticsItem = new JCheckBoxMenuItem("Diagnostics");
+        diagnosticsItem.addActionListener(e -> {
+            if (diagnosticsItem.isSelected()) {
+                panel.remove(tableScroll);
+                diagnosticsSplit.setTopComponent(tableScroll);
+                diagnosticsSplit.setBottomComponent(new DiagnosticsPanel(session.lease.getPool()));
+                panel.add(diagnosticsSplit, BorderLayout.CENTER);
+            } else {
+                panel.remove(diagnosticsSplit);
+                diagnosticsSplit.setBottomComponent(null);
+                panel.add(tableScroll, BorderLayout.CENTER);
+            }
+            panel.revalidate();
+            panel.repaint();
+        });
+
+        JMenuItem messesItem = new JMenuItem("All Messes...");
+        messesItem.addActionListener(e -> new MessesDialog(homeFrame).setVisible(true));
+
+        JMenu viewMenu = new JMenu("View");
+        viewMenu.add(diagnosticsItem);
+        viewMenu.add(messesItem);
+        JMenuBar menuBar = new JMenuBar();
+        menuBar.add(dataMenu);
+        menuBar.add(viewMenu);
+        homeFrame.setJMenuBar(menuBar);
+
+        if (user instanceof RegularUser) {
+            importItem.setEnabled(false);
+            forecastItem.setEnabled(false);
+            backupItem.setEnabled(false);
+            archiveItem.setEnabled(false);
+            diagnosticsItem.setEnabled(false);
+        }
+        // Only the operator, an admin of the default mess, sees across messes.
+        messesItem.setEnabled(user instanceof AdminUser && session.lease.getTenant().equals(TenantRouter.DEFAULT_TENANT));
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(statsLabel, BorderLayout.CENTER);
+        southPanel.add(busyPanel, BorderLayout.SOUTH);
 
         panel.add(tableScroll, BorderLayout.CENTER);
-        panel.add(statsLabel, BorderLayout.SOUTH);
-        panel.add(buttonPanel, BorderLayout.NORTH);
+        panel.add(southPanel, BorderLayout.SOUTH);
+        JPanel northPanel = new JPanel(new BorderLayout());
+        northPanel.add(buttonPanel, BorderLayout.NORTH);
+        northPanel.add(filterPanel, BorderLayout.SOUTH);
+        panel.add(northPanel, BorderLayout.NORTH);
 
         homeFrame.add(panel);
         homeFrame.setVisible(true);
+
+        reload(homeFrame, model, busyPanel, buttonPanel, service.summary());
+    }
+
+    private static void reload(JFrame homeFrame, HomeTableModel model, BusyPanel busyPanel, JPanel buttonPanel,
+                               CompletableFuture<MessSummary> snapshot) {
+        busyPanel.run("Loading...", snapshot, model::resync,
+            ex -> JOptionPane.showMessageDialog(homeFrame, "Failed to reload data: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+            buttonPanel.getComponents());
     }
 
     public static void main(String[] args) {
+        Metrics.installEdtMonitor();
         SwingUtilities.invokeLater(() -> showLoginPage());
     }
 }
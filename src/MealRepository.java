@@ -0,0 +1,467 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Data access for the GUI. Every call runs on a dedicated executor with a pooled connection
+ * and returns a {@link CompletableFuture}, so no JDBC work ever happens on the Event Dispatch
+ * Thread. Cancelling a returned future interrupts the worker running it. Meal, deposit and
+ * expense entries go through the {@link EventJournal} instead, which group-commits them.
+ *
+ * {@link #getInstance()} serves the default mess. {@link TenantRouter} opens a repository with
+ * its own executor, connections and journal for each of the other messes.
+ */
+public class MealRepository {
+
+    public interface DbCall<T> {
+        T call(Connection conn) throws SQLException;
+    }
+
+    static final String ROLE_ADMIN = "admin";
+    static final String ROLE_MEMBER = "member";
+
+    static final class Credentials {
+        final int userId;
+        final String passwordHash;
+        final String role;
+
+        Credentials(int userId, String passwordHash, String role) {
+            this.userId = userId;
+            this.passwordHash = passwordHash;
+            this.role = role;
+        }
+    }
+
+    public static class Choice {
+        final int id;
+        final String name;
+
+        Choice(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final MealRepository INSTANCE = new MealRepository(
+        Executors.newFixedThreadPool(Integer.getInteger("mealmanager.pool.size", 4), new DbThreadFactory("meal-db-")));
+
+    // Password hashing is CPU-bound, so it gets its own pool sized to the cores rather than to the
+    // connection pool, and a burst of sign-ins cannot starve database calls.
+    private static final ExecutorService HASHING = Executors.newFixedThreadPool(
+        Integer.getInteger("mealmanager.hashing.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+        new DbThreadFactory("meal-auth-"));
+
+    private final ExecutorService executor;
+    private final EventJournal.ConnectionSource connections;
+    private final EventJournal journal;
+    private ScheduledFuture<?> maintenance;
+
+    public MealRepository(ExecutorService executor) {
+        this(executor, MealManagerGUI::openConnection, new EventJournal(MealManagerGUI::openDedicatedConnection));
+    }
+
+    public MealRepository(ExecutorService executor, EventJournal journal) {
+        this(executor, MealManagerGUI::openConnection, journal);
+    }
+
+    public MealRepository(ExecutorService executor, EventJournal.ConnectionSource connections, EventJournal journal) {
+        this.executor = executor;
+        this.connections = connections;
+        this.journal = journal;
+    }
+
+    /**
+     * A repository with its own executor of {@code threads} workers, named after the mess, that
+     * borrows from {@code pool} and journals over a dedicated connection of it.
+     */
+    static MealRepository open(String name, int threads, ConnectionPool pool) {
+        return new MealRepository(Executors.newFixedThreadPool(threads, new DbThreadFactory("meal-db-" + name + "-")),
+            pool::getConnection, new EventJournal(pool::openDedicated));
+    }
+
+    /**
+     * Starts the periodic {@link Maintenance} of this repository's database.
+     */
+    synchronized void scheduleMaintenance() {
+        if (maintenance == null) {
+            maintenance = Maintenance.schedule(this);
+        }
+    }
+
+    /**
+     * Stops maintenance and writes out queued journal entries, then lets running calls finish
+     * and stops the executor. The caller closes the connections afterwards.
+     */
+    void close() {
+        synchronized (this) {
+            if (maintenance != null) {
+                maintenance.cancel(false);
+            }
+        }
+        journal.close();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static MealRepository getInstance() {
+        return INSTANCE;
+    }
+
+    public <T> CompletableFuture<T> submit(DbCall<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            try (Connection conn = connections.get()) {
+                result.complete(call.call(conn));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Looks the user up on the database executor, then checks the password on the hashing
+     * executor so the key derivation never holds a connection. A legacy or under-cost hash is
+     * replaced after a successful sign-in, before the future completes, so a failure to store it
+     * reaches the caller's error handling like any other. Completes with null for an unknown
+     * username or a wrong password.
+     */
+    public CompletableFuture<User> login(String username, String password) {
+        return submit(conn -> findCredentials(conn, username))
+            .thenApplyAsync(credentials -> {
+                String stored = credentials == null ? null : credentials.passwordHash;
+                return Passwords.verify(password, stored) ? credentials : null;
+            }, HASHING)
+            .thenCompose(credentials -> {
+                if (credentials == null) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                User user = credentials.role.equals(ROLE_ADMIN) ? new AdminUser(username) : new RegularUser(username);
+                if (!Passwords.needsRehash(credentials.passwordHash)) {
+                    return CompletableFuture.completedFuture(user);
+                }
+                return rehash(credentials, password).thenApply(updated -> user);
+            });
+    }
+
+    private CompletableFuture<Integer> rehash(Credentials credentials, String password) {
+        return CompletableFuture.supplyAsync(() -> Passwords.hash(password), HASHING)
+            .thenCompose(hash -> submit(conn -> {
+                // Only replace the hash that was verified, in case the password changed meanwhile.
+                try (PreparedStatement stmt = conn.prepareStatement("UPDATE users SET password = ? WHERE id = ? AND password = ?")) {
+                    stmt.setString(1, hash);
+                    stmt.setInt(2, credentials.userId);
+                    stmt.setString(3, credentials.passwordHash);
+                    return stmt.executeUpdate();
+                }
+            }));
+    }
+
+    static Credentials findCredentials(Connection conn, String username) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT id, password, role FROM users WHERE username = ?")) {
+            stmt.setString(1, username);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? new Credentials(rs.getInt("id"), rs.getString("password"), rs.getString("role")) : null;
+        }
+    }
+
+    /**
+     * Hashes the password on the hashing executor, then stores the new user as a member.
+     */
+    public CompletableFuture<Void> register(String name, String username, String password) {
+        return CompletableFuture.supplyAsync(() -> Passwords.hash(password), HASHING).thenCompose(hash -> submit(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO users (name, username, password, role) VALUES (?, ?, ?, ?)")) {
+                stmt.setString(1, name);
+                stmt.setString(2, username);
+                stmt.setString(3, hash);
+                stmt.setString(4, ROLE_MEMBER);
+                stmt.executeUpdate();
+            }
+            return null;
+        }));
+    }
+
+    public CompletableFuture<MessSummary> loadSummary() {
+        return submit(MealRepository::loadSummary);
+    }
+
+    /**
+     * Full reload for an explicit resync: verifies the running totals against the raw rows,
+     * rebuilds them if they have drifted, then loads the dashboard.
+     */
+    public CompletableFuture<MessSummary> resyncSummary() {
+        return submit(conn -> {
+            if (!SummaryTables.check(conn).isEmpty()) {
+                SummaryTables.rebuild(conn);
+            }
+            if (!Reports.check(conn).isEmpty()) {
+                Reports.rebuild(conn);
+            }
+            return loadSummary(conn);
+        });
+    }
+
+    static MessSummary loadSummary(Connection conn) throws SQLException {
+        MessSummary snapshot = new MessSummary();
+
+        try (Statement stmt = conn.createStatement()) {
+            snapshot.periodStart = BillingPeriods.openPeriodStart(conn);
+
+            ResultSet totals = stmt.executeQuery("SELECT total_cost, total_meals, total_deposits, carried_cost, " +
+                                                 "(SELECT COUNT(*) FROM members) AS member_count FROM mess_totals WHERE id = 1");
+            if (totals.next()) {
+                snapshot.totalCost = totals.getLong("total_cost");
+                snapshot.totalMeals = totals.getLong("total_meals");
+                snapshot.totalDeposits = totals.getLong("total_deposits");
+                snapshot.carriedCost = totals.getLong("carried_cost");
+                snapshot.memberCount = totals.getInt("member_count");
+            }
+
+            ResultSet memberMeals = stmt.executeQuery("SELECT member_id, meals FROM member_totals WHERE meals != 0 ORDER BY member_id");
+            while (memberMeals.next()) {
+                snapshot.addMeals(memberMeals.getInt("member_id"), memberMeals.getLong("meals"));
+            }
+            snapshot.allocate();
+        }
+        return snapshot;
+    }
+
+    public CompletableFuture<MemberPage> loadPage(String filter, int sortColumn, boolean ascending, double mealRate,
+                                                  int offset, int limit) {
+        return submit(conn -> loadPage(conn, filter, sortColumn, ascending, mealRate, offset, limit));
+    }
+
+    static MemberPage loadPage(Connection conn, String filter, int sortColumn, boolean ascending, double mealRate,
+                               int offset, int limit) throws SQLException {
+        String orderBy;
+        switch (sortColumn) {
+            case MemberPage.SORT_DEPOSIT:
+                orderBy = "m.deposit";
+                break;
+            case MemberPage.SORT_BALANCE:
+                orderBy = "m.deposit - IFNULL(t.carried_cost, 0) - IFNULL(t.meals, 0) * ?";
+                break;
+            case MemberPage.SORT_MEALS:
+                orderBy = "IFNULL(t.meals, 0)";
+                break;
+            default:
+                orderBy = "m.name COLLATE NOCASE";
+        }
+        String direction = ascending ? " ASC" : " DESC";
+        String sql = "SELECT m.id, m.name, m.deposit, IFNULL(t.meals, 0) AS meals, IFNULL(t.carried_cost, 0) AS carried_cost " +
+                     "FROM members m LEFT JOIN member_totals t ON t.member_id = m.id " +
+                     (filter.isEmpty() ? "" : "WHERE m.name LIKE ? ESCAPE '\\' ") +
+                     "ORDER BY " + orderBy + direction + ", m.id" + direction + " LIMIT ? OFFSET ?";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            if (!filter.isEmpty()) {
+                stmt.setString(index++, likePattern(filter));
+            }
+            if (sortColumn == MemberPage.SORT_BALANCE) {
+                stmt.setDouble(index++, mealRate);
+            }
+            stmt.setInt(index++, limit);
+            stmt.setInt(index, offset);
+
+            MemberPage page = new MemberPage(limit);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                page.add(rs.getInt("id"), rs.getString("name"), rs.getLong("deposit"), rs.getInt("meals"), rs.getLong("carried_cost"));
+            }
+            return page;
+        }
+    }
+
+    public CompletableFuture<Integer> countMembers(String filter) {
+        return submit(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(filter.isEmpty()
+                    ? "SELECT COUNT(*) FROM members"
+                    : "SELECT COUNT(*) FROM members WHERE name LIKE ? ESCAPE '\\'")) {
+                if (!filter.isEmpty()) {
+                    stmt.setString(1, likePattern(filter));
+                }
+                ResultSet rs = stmt.executeQuery();
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+    }
+
+    private static String likePattern(String filter) {
+        return "%" + filter.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    /**
+     * All members as (id, name) pairs in name order, for pickers such as the bulk meal grid.
+     */
+    public CompletableFuture<List<Choice>> listMembers() {
+        return submit(conn -> {
+            List<Choice> members = new ArrayList<>();
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT id, name FROM members ORDER BY name COLLATE NOCASE, id")) {
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    members.add(new Choice(rs.getInt("id"), rs.getString("name")));
+                }
+            }
+            return members;
+        });
+    }
+
+    public CompletableFuture<MessSummary> closePeriod(String endDate) {
+        return submit(conn -> {
+            BillingPeriods.closePeriod(conn, endDate);
+            return loadSummary(conn);
+        });
+    }
+
+    public CompletableFuture<List<Choice>> findUsersWithoutMembership() {
+        return submit(conn -> {
+            List<Choice> candidates = new ArrayList<>();
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT id, name FROM users WHERE id NOT IN (SELECT user_id FROM members);")) {
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    candidates.add(new Choice(rs.getInt("id"), rs.getString("name")));
+                }
+            }
+            return candidates;
+        });
+    }
+
+    public CompletableFuture<Integer> addMember(int userId, String name, long deposit) {
+        return submit(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO members (user_id, name, deposit, balance) VALUES (?, ?, ?, ?);",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setInt(1, userId);
+                stmt.setString(2, name);
+                stmt.setLong(3, deposit);
+                stmt.setLong(4, deposit);
+                stmt.executeUpdate();
+
+                ResultSet keys = stmt.getGeneratedKeys();
+                return keys.next() ? keys.getInt(1) : null;
+            }
+        });
+    }
+
+    /**
+     * Journals a meal entry for today. The future completes with its journal sequence number.
+     */
+    public CompletableFuture<Long> addMeal(int memberId, int mealCount) {
+        return journal.submit(EventJournal.Event.meal(memberId, mealCount, null));
+    }
+
+    /**
+     * Journals one meal entry per member for {@code date}; they are applied all together or not
+     * at all.
+     */
+    public CompletableFuture<Long> addMeals(String date, int[] memberIds, int[] mealCounts) {
+        EventJournal.Event[] events = new EventJournal.Event[memberIds.length];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = EventJournal.Event.meal(memberIds[i], mealCounts[i], date);
+        }
+        return journal.submitAll(events);
+    }
+
+    public CompletableFuture<Integer> exportCsv(CsvTransfer.Kind kind, Path file) {
+        return submit(conn -> {
+            try {
+                return CsvTransfer.export(conn, kind, file);
+            } catch (IOException e) {
+                throw new SQLException("Could not write " + file + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    public CompletableFuture<Path> backup(Path directory) {
+        return submit(conn -> {
+            try {
+                return Maintenance.backup(conn, directory);
+            } catch (IOException e) {
+                throw new SQLException("Could not write the backup to " + directory + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    public CompletableFuture<Maintenance.ArchiveResult> archive(String cutoff) {
+        return submit(conn -> {
+            try {
+                return Maintenance.archive(conn, cutoff);
+            } catch (IOException e) {
+                throw new SQLException("Could not write the archive: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    public CompletableFuture<CsvTransfer.ImportResult> importCsv(CsvTransfer.Kind kind, Path file) {
+        return submit(conn -> {
+            try {
+                return CsvTransfer.importFile(conn, kind, file, CsvTransfer.DEFAULT_BATCH_SIZE);
+            } catch (IOException e) {
+                throw new SQLException("Could not read " + file + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Journals a deposit. The future fails with {@link IllegalArgumentException} if there is no
+     * such member.
+     */
+    public CompletableFuture<Long> addDeposit(int memberId, long deposit) {
+        return journal.submit(EventJournal.Event.deposit(memberId, deposit));
+    }
+
+    public CompletableFuture<Long> addExpense(String description, long amount) {
+        return journal.submit(EventJournal.Event.expense(description, amount));
+    }
+
+    private static class DbThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DbThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
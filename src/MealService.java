@@ -0,0 +1,261 @@
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Headless service layer shared by the Swing client and the HTTP API.
+ *
+ * Input validation for every write lives here, and the cost-sharing rules live in
+ * {@link MessSummary}, so neither front end carries business logic of its own. All calls are
+ * asynchronous and run on the {@link MealRepository} executor. Amounts are {@link Money} minor
+ * units.
+ *
+ * Reads are served from the in-memory {@link Ledger}. Journaled writes update it with their
+ * delta once they are durable; writes that bypass the journal reload it.
+ */
+public class MealService implements MemberPage.Source {
+
+    /**
+     * A page of members together with the summary used to derive their cost and balance.
+     */
+    public static class MemberView {
+        public final MessSummary summary;
+        public final MemberPage page;
+
+        MemberView(MessSummary summary, MemberPage page) {
+            this.summary = summary;
+            this.page = page;
+        }
+    }
+
+    private static final MealService INSTANCE = new MealService(MealRepository.getInstance());
+
+    private final MealRepository repository;
+    private final Ledger ledger;
+    private final LoginThrottle loginThrottle = new LoginThrottle();
+
+    public MealService(MealRepository repository) {
+        this.repository = repository;
+        this.ledger = new Ledger(repository);
+    }
+
+    public static MealService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Signs in, refusing straight away while the username is locked out by
+     * {@link LoginThrottle}. Completes with null for wrong credentials.
+     */
+    public CompletableFuture<User> login(String username, String password) {
+        long retryAfter = loginThrottle.retryAfterMillis(username);
+        if (retryAfter > 0) {
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                "Too many failed sign-ins. Try again in " + (retryAfter + 999) / 1000 + " s."));
+        }
+        return repository.login(username, password).whenComplete((user, error) -> {
+            if (user != null) {
+                loginThrottle.succeeded(username);
+            } else if (error == null) {
+                loginThrottle.failed(username);
+            }
+        });
+    }
+
+    public CompletableFuture<Void> register(String name, String username, String password) {
+        if (name.isBlank() || username.isBlank() || password.isEmpty()) {
+            return invalid("Name, username and password are required.");
+        }
+        return repository.register(name.trim(), username.trim(), password);
+    }
+
+    public void addLedgerListener(Ledger.Listener listener) {
+        ledger.addListener(listener);
+    }
+
+    public void removeLedgerListener(Ledger.Listener listener) {
+        ledger.removeListener(listener);
+    }
+
+    public CompletableFuture<MessSummary> summary() {
+        return ledger.snapshot().thenApply(Ledger.Snapshot::summary);
+    }
+
+    /**
+     * Rebuilds the running totals from the raw rows, then reloads the ledger from them.
+     */
+    public CompletableFuture<MessSummary> resync() {
+        return repository.resyncSummary()
+            .thenCompose(summary -> ledger.reload())
+            .thenApply(Ledger.Snapshot::summary);
+    }
+
+    @Override
+    public CompletableFuture<MemberPage> loadPage(String filter, int sortColumn, boolean ascending, int offset, int limit) {
+        return ledger.loadPage(filter, sortColumn, ascending, offset, limit);
+    }
+
+    @Override
+    public CompletableFuture<Integer> countMembers(String filter) {
+        return ledger.countMembers(filter);
+    }
+
+    /**
+     * Returns the summary and a page of members from the same ledger snapshot, so the page is
+     * consistent with the totals used to price it.
+     */
+    public CompletableFuture<MemberView> members(String filter, int sortColumn, boolean ascending, int offset, int limit) {
+        if (offset < 0 || limit < 1 || limit > 1000) {
+            return invalid("offset must be >= 0 and limit between 1 and 1000.");
+        }
+        return ledger.snapshot().thenApply(snapshot ->
+            new MemberView(snapshot.summary(), snapshot.page(filter, sortColumn, ascending, offset, limit)));
+    }
+
+    public CompletableFuture<List<MealRepository.Choice>> listMembers() {
+        return repository.listMembers();
+    }
+
+    public CompletableFuture<List<MealRepository.Choice>> findUsersWithoutMembership() {
+        return repository.findUsersWithoutMembership();
+    }
+
+    public CompletableFuture<Integer> addMember(int userId, String name, long deposit) {
+        if (deposit < 0) {
+            return invalid("Initial deposit must be zero or more.");
+        }
+        return repository.addMember(userId, name, deposit).thenCompose(id -> ledger.reload().thenApply(snapshot -> id));
+    }
+
+    public CompletableFuture<Void> addMeal(int memberId, int mealCount) {
+        if (mealCount == 0) {
+            return invalid("Meal count must not be zero.");
+        }
+        return repository.addMeal(memberId, mealCount)
+            .thenAccept(seq -> ledger.mealsAdded(seq, new int[] {memberId}, new int[] {mealCount}));
+    }
+
+    public CompletableFuture<Void> addMeals(String date, int[] memberIds, int[] mealCounts) {
+        if (memberIds.length != mealCounts.length) {
+            return invalid("Every member needs a meal count.");
+        }
+        return repository.addMeals(date, memberIds, mealCounts)
+            .thenAccept(seq -> ledger.mealsAdded(seq, memberIds, mealCounts));
+    }
+
+    public CompletableFuture<Void> addDeposit(int memberId, long amount) {
+        if (amount == 0) {
+            return invalid("Deposit amount must not be zero.");
+        }
+        return repository.addDeposit(memberId, amount)
+            .thenAccept(seq -> ledger.depositAdded(seq, memberId, amount));
+    }
+
+    public CompletableFuture<Void> addExpense(String description, long amount) {
+        if (description == null || description.isBlank()) {
+            return invalid("Expense description is required.");
+        }
+        if (amount == 0) {
+            return invalid("Expense amount must not be zero.");
+        }
+        return repository.addExpense(description.trim(), amount)
+            .thenAccept(seq -> ledger.expenseAdded(seq, amount));
+    }
+
+    /**
+     * Closes the open period through {@code endDate} ({@code YYYY-MM-DD}, today at the latest).
+     */
+    public CompletableFuture<MessSummary> closePeriod(String endDate) {
+        try {
+            if (LocalDate.parse(endDate).isAfter(LocalDate.now())) {
+                return invalid("A period cannot be closed after today.");
+            }
+        } catch (DateTimeParseException e) {
+            return invalid("The period end date must be YYYY-MM-DD.");
+        }
+        return repository.closePeriod(endDate).thenCompose(summary -> ledger.reload().thenApply(Ledger.Snapshot::summary));
+    }
+
+    /**
+     * Runs a date-range report from the daily rollups. Dates are inclusive {@code YYYY-MM-DD}.
+     */
+    public CompletableFuture<Reports.Table> report(Reports.Kind kind, String from, String to, int memberId) {
+        try {
+            if (LocalDate.parse(from).isAfter(LocalDate.parse(to))) {
+                return invalid("The report must not end before it starts.");
+            }
+        } catch (DateTimeParseException e) {
+            return invalid("Report dates must be YYYY-MM-DD.");
+        }
+        return repository.submit(conn -> Reports.run(conn, kind, from, to, memberId));
+    }
+
+    /**
+     * Loads the open period's history for a forecast ending on {@code endDate}. Load it once and
+     * run scenarios over it with {@link #forecast}.
+     */
+    public CompletableFuture<Forecast.History> forecastHistory(String endDate) {
+        LocalDate today = LocalDate.now();
+        LocalDate end;
+        try {
+            end = LocalDate.parse(endDate);
+        } catch (DateTimeParseException e) {
+            return invalid("The forecast end date must be YYYY-MM-DD.");
+        }
+        if (end.isBefore(today)) {
+            return invalid("The forecast must end today or later.");
+        }
+        return ledger.snapshot().thenCompose(snapshot -> repository.submit(conn -> Forecast.load(conn, snapshot, today, end)));
+    }
+
+    /**
+     * Runs the Monte Carlo simulation on the common fork-join pool. It does not touch the
+     * database.
+     */
+    public CompletableFuture<Forecast.Result> forecast(Forecast.History history, Forecast.Scenario scenario) {
+        if (scenario.guestMealsPerDay < 0) {
+            return invalid("Guest meals must be zero or more.");
+        }
+        if (scenario.guestMealsPerDay > 0 && scenario.hostMemberId == 0) {
+            return invalid("Choose the member the guests eat with.");
+        }
+        if (!(scenario.priceFactor > 0)) {
+            return invalid("Prices cannot fall by 100% or more.");
+        }
+        return CompletableFuture.supplyAsync(() -> Forecast.simulate(history, scenario, Forecast.DEFAULT_TRIALS), ForkJoinPool.commonPool());
+    }
+
+    public CompletableFuture<Integer> exportCsv(CsvTransfer.Kind kind, Path file) {
+        return repository.exportCsv(kind, file);
+    }
+
+    public CompletableFuture<CsvTransfer.ImportResult> importCsv(CsvTransfer.Kind kind, Path file) {
+        return repository.importCsv(kind, file).thenCompose(result -> ledger.reload().thenApply(snapshot -> result));
+    }
+
+    /**
+     * Backs the database up into {@code mealmanager.backup.dir} while it stays in use, and
+     * completes with the backup file.
+     */
+    public CompletableFuture<Path> backup() {
+        return repository.backup(Maintenance.BACKUP_DIR);
+    }
+
+    /**
+     * Archives the meals and expenses of closed periods older than {@code retentionDays}. The
+     * open period is never touched, so the ledger stays as it is.
+     */
+    public CompletableFuture<Maintenance.ArchiveResult> archive(int retentionDays) {
+        if (retentionDays < 1) {
+            return invalid("Keep at least one day of rows.");
+        }
+        return repository.archive(LocalDate.now().minusDays(retentionDays).toString());
+    }
+
+    private static <T> CompletableFuture<T> invalid(String message) {
+        return CompletableFuture.failedFuture(new IllegalArgumentException(message));
+    }
+}
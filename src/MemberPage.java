@@ -0,0 +1,65 @@
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One page of member rows stored column-wise in primitive arrays. Amounts are {@link Money}
+ * minor units.
+ */
+public class MemberPage {
+
+    public static final int SORT_NAME = 0;
+    public static final int SORT_DEPOSIT = 1;
+    public static final int SORT_BALANCE = 2;
+    public static final int SORT_MEALS = 3;
+
+    /**
+     * Loads member pages. Implementations run off the Event Dispatch Thread.
+     */
+    public interface Source {
+        CompletableFuture<MemberPage> loadPage(String filter, int sortColumn, boolean ascending, int offset, int limit);
+
+        CompletableFuture<Integer> countMembers(String filter);
+    }
+
+    final int[] ids;
+    final String[] names;
+    final long[] deposits;
+    final int[] meals;
+    final long[] carriedCosts;
+    int size;
+
+    public MemberPage(int capacity) {
+        ids = new int[capacity];
+        names = new String[capacity];
+        deposits = new long[capacity];
+        meals = new int[capacity];
+        carriedCosts = new long[capacity];
+    }
+
+    void add(int id, String name, long deposit, int mealCount, long carriedCost) {
+        ids[size] = id;
+        names[size] = name;
+        deposits[size] = deposit;
+        meals[size] = mealCount;
+        carriedCosts[size] = carriedCost;
+        size++;
+    }
+
+    void set(int index, long deposit, int mealCount, long carriedCost) {
+        deposits[index] = deposit;
+        meals[index] = mealCount;
+        carriedCosts[index] = carriedCost;
+    }
+
+    int indexOf(int memberId) {
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == memberId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.Arrays;
+
+/**
+ * Mess-wide totals for the open billing period, plus the cost-sharing rules derived from them.
+ *
+ * Amounts are {@link Money} minor units. The period's total cost is split between members in
+ * proportion to the meals they ate, using a largest-remainder allocation so the individual
+ * costs add up to the total exactly. The allocation is recomputed whenever the totals change,
+ * so reading a member's cost is a lookup. A member's balance is their lifetime deposit minus
+ * the cost carried over from closed periods minus their cost in the open period.
+ */
+public class MessSummary {
+
+    String periodStart = "";
+    long totalCost;
+    long totalMeals;
+    long totalDeposits;
+    long carriedCost;
+    int memberCount;
+
+    // Per-member meals for the open period, sorted by member id, and each member's share.
+    private int[] memberIds = new int[0];
+    private long[] memberMeals = new long[0];
+    private long[] shares = new long[0];
+    private long[] scratch = new long[0];
+    private int members;
+
+    public String getPeriodStart() {
+        return periodStart;
+    }
+
+    public long getTotalCost() {
+        return totalCost;
+    }
+
+    public long getTotalMeals() {
+        return totalMeals;
+    }
+
+    public int getMemberCount() {
+        return memberCount;
+    }
+
+    /**
+     * The average cost of one meal in minor units. Only used for display and ordering; member
+     * costs come from the allocation.
+     */
+    public double getMealRate() {
+        return totalMeals > 0 ? (double) totalCost / totalMeals : 0;
+    }
+
+    public long getMessBalance() {
+        return totalDeposits - carriedCost - totalCost;
+    }
+
+    public long individualCost(int memberId) {
+        int index = Arrays.binarySearch(memberIds, 0, members, memberId);
+        return index >= 0 ? shares[index] : 0;
+    }
+
+    public long balance(int memberId, long deposit, long memberCarriedCost) {
+        return deposit - memberCarriedCost - individualCost(memberId);
+    }
+
+    /**
+     * A deep copy, so a changed summary can be published without touching one readers may hold.
+     */
+    MessSummary copy() {
+        MessSummary copy = new MessSummary();
+        copy.periodStart = periodStart;
+        copy.totalCost = totalCost;
+        copy.totalMeals = totalMeals;
+        copy.totalDeposits = totalDeposits;
+        copy.carriedCost = carriedCost;
+        copy.memberCount = memberCount;
+        copy.memberIds = memberIds.clone();
+        copy.memberMeals = memberMeals.clone();
+        copy.shares = shares.clone();
+        copy.scratch = new long[scratch.length];
+        copy.members = members;
+        return copy;
+    }
+
+    /**
+     * Adds a member's meals for the open period. Call {@link #allocate()} once all meals have
+     * been added.
+     */
+    void addMeals(int memberId, long meals) {
+        int index = Arrays.binarySearch(memberIds, 0, members, memberId);
+        if (index < 0) {
+            index = -index - 1;
+            if (members == memberIds.length) {
+                int capacity = Math.max(16, members * 2);
+                memberIds = Arrays.copyOf(memberIds, capacity);
+                memberMeals = Arrays.copyOf(memberMeals, capacity);
+                shares = new long[capacity];
+                scratch = new long[capacity];
+            }
+            System.arraycopy(memberIds, index, memberIds, index + 1, members - index);
+            System.arraycopy(memberMeals, index, memberMeals, index + 1, members - index);
+            memberIds[index] = memberId;
+            memberMeals[index] = 0;
+            members++;
+        }
+        memberMeals[index] += meals;
+    }
+
+    /**
+     * Recomputes every member's share of the total cost.
+     */
+    void allocate() {
+        Money.allocate(totalCost, memberMeals, members, shares, scratch);
+    }
+}
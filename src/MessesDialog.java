@@ -0,0 +1,155 @@
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Totals of every mess side by side, for the operator running several of them. The summaries
+ * are read from all mess databases in parallel; a mess that cannot be opened shows its error
+ * instead. New messes are created here too.
+ */
+public class MessesDialog extends JDialog {
+
+    private static final String[] COLUMNS = {"Mess", "Name", "Members", "Meals", "Total Cost", "Meal Rate",
+        "Mess Balance", "Status"};
+    private static final Class<?>[] COLUMN_CLASSES = {String.class, String.class, Integer.class, Integer.class, Long.class,
+        String.class, Long.class, String.class};
+
+    private final TenantRouter router = TenantRouter.getInstance();
+    private final SummaryModel model = new SummaryModel();
+    private final JLabel totalsLabel = new JLabel(" ");
+    private final BusyPanel busyPanel = new BusyPanel();
+    private final JButton refreshButton = new JButton("Refresh");
+    private final JButton createButton = new JButton("New Mess...");
+
+    public MessesDialog(JFrame owner) {
+        super(owner, "All Messes", false);
+
+        JTable table = new JTable(model);
+        table.setDefaultRenderer(Long.class, new AmountRenderer());
+        totalsLabel.setHorizontalAlignment(SwingConstants.CENTER);
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controls.add(refreshButton);
+        controls.add(createButton);
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(totalsLabel, BorderLayout.CENTER);
+        southPanel.add(busyPanel, BorderLayout.SOUTH);
+
+        add(controls, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(southPanel, BorderLayout.SOUTH);
+        setSize(900, 400);
+        setLocationRelativeTo(owner);
+
+        refreshButton.addActionListener(e -> refresh());
+        createButton.addActionListener(e -> create());
+        refresh();
+    }
+
+    private void refresh() {
+        long started = System.nanoTime();
+        busyPanel.run("Reading every mess...", router.summaries(), summaries -> {
+            model.show(summaries);
+            int members = 0;
+            long cost = 0;
+            for (TenantRouter.TenantSummary summary : summaries) {
+                if (summary.summary != null) {
+                    members += summary.summary.getMemberCount();
+                    cost += summary.summary.getTotalCost();
+                }
+            }
+            totalsLabel.setText(String.format("%d messes - %d members - Total Cost %s - read in %d ms", summaries.size(),
+                members, Money.format(cost), (System.nanoTime() - started) / 1_000_000));
+        }, ex -> JOptionPane.showMessageDialog(this, "Failed to read the messes: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+        refreshButton, createButton);
+    }
+
+    private void create() {
+        JTextField idField = new JTextField();
+        JTextField nameField = new JTextField();
+        JPasswordField passField = new JPasswordField();
+        JPanel form = new JPanel(new GridLayout(3, 2));
+        form.add(new JLabel("Id (e.g. north-hostel):"));
+        form.add(idField);
+        form.add(new JLabel("Name:"));
+        form.add(nameField);
+        form.add(new JLabel("Admin password:"));
+        form.add(passField);
+        if (JOptionPane.showConfirmDialog(this, form, "New Mess", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        busyPanel.run("Creating mess...", router.create(idField.getText().trim(), nameField.getText(), new String(passField.getPassword())),
+            lease -> {
+                lease.close();
+                JOptionPane.showMessageDialog(this, "Mess " + lease.getTenant() + " created. Its admin signs in as \"admin\".",
+                    "Success", JOptionPane.INFORMATION_MESSAGE);
+                refresh();
+            },
+            ex -> JOptionPane.showMessageDialog(this, "Failed to create the mess: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+            refreshButton, createButton);
+    }
+
+    private static class SummaryModel extends AbstractTableModel {
+        private List<TenantRouter.TenantSummary> summaries = new ArrayList<>();
+
+        void show(List<TenantRouter.TenantSummary> summaries) {
+            this.summaries = summaries;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return summaries.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return COLUMN_CLASSES[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            TenantRouter.TenantSummary tenant = summaries.get(row);
+            MessSummary summary = tenant.summary;
+            if (column == 0) {
+                return tenant.tenant;
+            }
+            if (column == 7) {
+                return tenant.error == null ? "OK" : tenant.error;
+            }
+            if (summary == null) {
+                return null;
+            }
+            switch (column) {
+                case 1:
+                    return tenant.name;
+                case 2:
+                    return summary.getMemberCount();
+                case 3:
+                    return Math.toIntExact(summary.getTotalMeals());
+                case 4:
+                    return summary.getTotalCost();
+                case 5:
+                    return String.format("%.2f", summary.getMealRate() / Money.SCALE);
+                case 6:
+                    return summary.getMessBalance();
+                default:
+                    return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,495 @@
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Process-wide runtime instrumentation.
+ *
+ * Only execute calls are timed. {@link ConnectionPool} routes the execute calls on its cached
+ * statements, whose handler already sees every call, through {@link #execute}; the statements it
+ * does not cache are wrapped by {@link #instrument}. Nothing else on a statement is intercepted and
+ * result sets are never wrapped, so a query's time covers the execute call only, which in SQLite
+ * runs it up to its first row. Latencies go into one {@link LatencyHistogram} per distinct SQL
+ * text, with literals replaced by {@code ?} so ad hoc statements group together, along with the
+ * rows each update changed. Executions slower than the threshold
+ * ({@code -Dmealmanager.slowquery.ms}, 100 by default) are printed to standard error and kept in
+ * a short list for the diagnostics panel.
+ *
+ * {@link #installEdtMonitor()} times every event the Event Dispatch Thread handles, so work that
+ * blocks the GUI shows up. Everything is also published over JMX for jconsole or VisualVM.
+ * Instrumentation can be switched off with {@code -Dmealmanager.metrics=false} or through JMX;
+ * uncached statements handed out while it is off are not wrapped at all.
+ */
+public class Metrics implements MetricsMXBean {
+
+    static final String OTHER_QUERIES = "(other queries)";
+
+    private static final int MAX_QUERIES = 500;
+    private static final int SLOW_QUERY_LOG_SIZE = 100;
+    private static final long EDT_BLOCKED_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    private volatile boolean enabled = Boolean.parseBoolean(System.getProperty("mealmanager.metrics", "true"));
+    private volatile long slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("mealmanager.slowquery.ms", 100));
+
+    // Keyed by normalized SQL. The raw-text map only saves normalizing the same string twice.
+    private final Map<String, QueryStats> queries = new ConcurrentHashMap<>();
+    private final Map<String, QueryStats> byRawSql = new ConcurrentHashMap<>();
+    private final ArrayDeque<SlowQuery> slowQueries = new ArrayDeque<>();
+    private final LongAdder slowQueryCount = new LongAdder();
+
+    private final LatencyHistogram edtDispatch = new LatencyHistogram();
+    private final LongAdder edtBlocked = new LongAdder();
+    private final LongAdder edtBlockedNanos = new LongAdder();
+
+    private Metrics() {
+        register("mealmanager:type=Metrics", this);
+    }
+
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    static final class QueryStats {
+        final String sql;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder rows = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        QueryStats(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    /**
+     * One query's totals at the time it was read. Public with getters so JMX can publish it.
+     */
+    public static final class QuerySnapshot {
+        private final String sql;
+        private final long count;
+        private final long errors;
+        private final long rows;
+        private final long totalMillis;
+        private final long meanMicros;
+        private final long p50Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+
+        QuerySnapshot(QueryStats stats) {
+            LatencyHistogram latency = stats.latency;
+            this.sql = stats.sql;
+            this.count = latency.getCount();
+            this.errors = stats.errors.sum();
+            this.rows = stats.rows.sum();
+            this.totalMillis = TimeUnit.NANOSECONDS.toMillis(latency.getTotalNanos());
+            this.meanMicros = TimeUnit.NANOSECONDS.toMicros(latency.getMeanNanos());
+            this.p50Micros = TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(50));
+            this.p99Micros = TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(99));
+            this.maxMicros = TimeUnit.NANOSECONDS.toMicros(latency.getMaxNanos());
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        public long getMeanMicros() {
+            return meanMicros;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+    }
+
+    /**
+     * One execution that took longer than the slow-query threshold.
+     */
+    public static final class SlowQuery {
+        private final long time;
+        private final String sql;
+        private final long micros;
+        private final long rows;
+        private final String thread;
+
+        SlowQuery(long time, String sql, long micros, long rows, String thread) {
+            this.time = time;
+            this.sql = sql;
+            this.micros = micros;
+            this.rows = rows;
+            this.thread = thread;
+        }
+
+        /**
+         * When the execution finished, in epoch milliseconds.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getMicros() {
+            return micros;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+    }
+
+    /**
+     * Wraps a statement the pool does not cache so its execute calls are timed, or returns it
+     * unchanged while instrumentation is off. {@code sql} is the prepared SQL, or null for a
+     * plain statement whose SQL is passed to each execute call.
+     */
+    static <T extends Statement> T instrument(Class<T> type, T target, String sql) {
+        if (!INSTANCE.enabled) {
+            return target;
+        }
+        InvocationHandler handler = (proxy, method, args) -> method.getName().startsWith("execute")
+            ? execute(target, method, args, sql)
+            : call(target, method, args);
+        return type.cast(Proxy.newProxyInstance(Metrics.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    /**
+     * Invokes one execute method on {@code target} and records its time, or just invokes it
+     * while instrumentation is off. {@code sql} is the prepared SQL, or null when the SQL is the
+     * call's first argument.
+     */
+    static Object execute(Statement target, Method method, Object[] args, String sql) throws Throwable {
+        if (!INSTANCE.enabled) {
+            return call(target, method, args);
+        }
+        QueryStats stats;
+        if (sql != null) {
+            stats = INSTANCE.statsFor(sql);
+        } else {
+            stats = args != null && args.length > 0 && args[0] instanceof String
+                ? INSTANCE.statsFor((String) args[0])
+                : INSTANCE.statsFor("(batch)");
+        }
+        long started = System.nanoTime();
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            INSTANCE.record(stats, System.nanoTime() - started, 0, true);
+            throw e.getCause();
+        }
+        INSTANCE.record(stats, System.nanoTime() - started, updatedRows(result), false);
+        return result;
+    }
+
+    private QueryStats statsFor(String rawSql) {
+        QueryStats stats = byRawSql.get(rawSql);
+        if (stats != null) {
+            return stats;
+        }
+        String sql = normalize(rawSql);
+        stats = queries.get(sql);
+        if (stats == null) {
+            stats = queries.size() < MAX_QUERIES
+                ? queries.computeIfAbsent(sql, QueryStats::new)
+                : queries.computeIfAbsent(OTHER_QUERIES, QueryStats::new);
+        }
+        if (byRawSql.size() < MAX_QUERIES * 4) {
+            byRawSql.put(rawSql, stats);
+        }
+        return stats;
+    }
+
+    static String normalize(String sql) {
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    private void record(QueryStats stats, long nanos, long rows, boolean failed) {
+        stats.latency.record(nanos);
+        stats.rows.add(rows);
+        if (failed) {
+            stats.errors.increment();
+        }
+        if (nanos < slowQueryNanos) {
+            return;
+        }
+        slowQueryCount.increment();
+        SlowQuery slow = new SlowQuery(System.currentTimeMillis(), stats.sql, TimeUnit.NANOSECONDS.toMicros(nanos), rows,
+            Thread.currentThread().getName());
+        synchronized (slowQueries) {
+            if (slowQueries.size() == SLOW_QUERY_LOG_SIZE) {
+                slowQueries.removeFirst();
+            }
+            slowQueries.addLast(slow);
+        }
+        System.err.printf("Slow query (%.1f ms, %d rows, %s): %s%n", nanos / 1e6, rows, slow.thread, stats.sql);
+    }
+
+    private static long updatedRows(Object result) {
+        if (result instanceof Number) {
+            return Math.max(0, ((Number) result).longValue());
+        }
+        long rows = 0;
+        if (result instanceof int[]) {
+            for (int count : (int[]) result) {
+                rows += Math.max(0, count);
+            }
+        } else if (result instanceof long[]) {
+            for (long count : (long[]) result) {
+                rows += Math.max(0, count);
+            }
+        }
+        return rows;
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Replaces the system event queue with one that times each event. Events that open a modal
+     * dialog keep dispatching other events until it closes; those are not counted as blocking.
+     */
+    public static void installEdtMonitor() {
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new TimedEventQueue());
+    }
+
+    private static final class TimedEventQueue extends EventQueue {
+        // Only the Event Dispatch Thread touches this.
+        private long dispatched;
+
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            long ticket = ++dispatched;
+            long started = System.nanoTime();
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                if (dispatched == ticket) {
+                    INSTANCE.edtDispatched(System.nanoTime() - started);
+                }
+            }
+        }
+    }
+
+    private void edtDispatched(long nanos) {
+        edtDispatch.record(nanos);
+        if (nanos >= EDT_BLOCKED_NANOS) {
+            edtBlocked.increment();
+            edtBlockedNanos.add(nanos);
+        }
+    }
+
+    /**
+     * Registers a bean with the platform MBean server and returns its name, or null if a bean
+     * of that name is already registered or registration fails.
+     */
+    static ObjectName register(String name, Object bean) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, objectName);
+            return objectName;
+        } catch (InstanceAlreadyExistsException e) {
+            return null;
+        } catch (JMException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    static void unregister(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowQueryNanos);
+    }
+
+    @Override
+    public void setSlowQueryThresholdMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("The slow-query threshold cannot be negative.");
+        }
+        slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override
+    public long getQueryCount() {
+        long count = 0;
+        for (QueryStats stats : queries.values()) {
+            count += stats.latency.getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getQueryErrors() {
+        long errors = 0;
+        for (QueryStats stats : queries.values()) {
+            errors += stats.errors.sum();
+        }
+        return errors;
+    }
+
+    @Override
+    public long getRowsChanged() {
+        long rows = 0;
+        for (QueryStats stats : queries.values()) {
+            rows += stats.rows.sum();
+        }
+        return rows;
+    }
+
+    @Override
+    public long getSlowQueryCount() {
+        return slowQueryCount.sum();
+    }
+
+    /**
+     * Every query seen so far, the most total time first.
+     */
+    @Override
+    public List<QuerySnapshot> getQueries() {
+        List<QuerySnapshot> snapshots = new ArrayList<>();
+        for (QueryStats stats : queries.values()) {
+            if (stats.latency.getCount() > 0) {
+                snapshots.add(new QuerySnapshot(stats));
+            }
+        }
+        snapshots.sort(Comparator.comparingLong(QuerySnapshot::getTotalMillis).reversed()
+            .thenComparing(Comparator.comparingLong(QuerySnapshot::getCount).reversed()));
+        return snapshots;
+    }
+
+    /**
+     * The most recent slow executions, newest first.
+     */
+    @Override
+    public List<SlowQuery> getSlowQueries() {
+        synchronized (slowQueries) {
+            List<SlowQuery> recent = new ArrayList<>(slowQueries);
+            Collections.reverse(recent);
+            return recent;
+        }
+    }
+
+    @Override
+    public long getEdtEventCount() {
+        return edtDispatch.getCount();
+    }
+
+    @Override
+    public long getEdtP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(edtDispatch.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getEdtMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(edtDispatch.getMaxNanos());
+    }
+
+    @Override
+    public long getEdtBlockedCount() {
+        return edtBlocked.sum();
+    }
+
+    @Override
+    public long getEdtBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(edtBlockedNanos.sum());
+    }
+
+    /**
+     * Clears every histogram and counter. Statements that are already wrapped keep recording.
+     */
+    @Override
+    public void reset() {
+        for (QueryStats stats : queries.values()) {
+            stats.latency.reset();
+            stats.rows.reset();
+            stats.errors.reset();
+        }
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+        slowQueryCount.reset();
+        edtDispatch.reset();
+        edtBlocked.reset();
+        edtBlockedNanos.reset();
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.List;
+
+/**
+ * Query and Event Dispatch Thread timings, registered as
+ * {@code mealmanager:type=Metrics}. Times are in microseconds unless the name says otherwise.
+ */
+public interface MetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getSlowQueryThresholdMillis();
+
+    void setSlowQueryThresholdMillis(long millis);
+
+    long getQueryCount();
+
+    long getQueryErrors();
+
+    long getRowsChanged();
+
+    long getSlowQueryCount();
+
+    List<Metrics.QuerySnapshot> getQueries();
+
+    List<Metrics.SlowQuery> getSlowQueries();
+
+    long getEdtEventCount();
+
+    long getEdtP99Micros();
+
+    long getEdtMaxMicros();
+
+    long getEdtBlockedCount();
+
+    long getEdtBlockedMillis();
+
+    void reset();
+}
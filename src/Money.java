@@ -0,0 +1,121 @@
+import java.util.Arrays;
+
+/**
+ * Money as {@code long} minor units (cents).
+ *
+ * Every amount in the database and in memory is a whole number of minor units, so sums are
+ * exact. Splitting a total between members uses the largest-remainder method: each member gets
+ * the floor of their proportional share, and the cents left over go one each to the members
+ * with the largest remainders, so the shares always add up to the total.
+ */
+public final class Money {
+
+    public static final int SCALE = 100;
+    private static final int DECIMALS = 2;
+
+    private Money() {
+    }
+
+    /**
+     * Parses a decimal amount such as {@code 12}, {@code -3.5} or {@code 1200.25}. More than
+     * two decimal places is rejected rather than rounded.
+     */
+    public static long parse(String text) {
+        String s = text.trim();
+        if (s.isEmpty()) {
+            throw new NumberFormatException("Amount is empty.");
+        }
+        boolean negative = s.charAt(0) == '-';
+        int start = negative || s.charAt(0) == '+' ? 1 : 0;
+        int dot = s.indexOf('.');
+        String whole = dot < 0 ? s.substring(start) : s.substring(start, dot);
+        String fraction = dot < 0 ? "" : s.substring(dot + 1);
+        if ((whole.isEmpty() && fraction.isEmpty()) || fraction.length() > DECIMALS
+                || !digits(whole) || !digits(fraction)) {
+            throw new NumberFormatException("Not an amount with at most " + DECIMALS + " decimal places: " + text);
+        }
+        long minor;
+        try {
+            minor = Math.addExact(Math.multiplyExact(whole.isEmpty() ? 0 : Long.parseLong(whole), SCALE),
+                fraction.isEmpty() ? 0 : Long.parseLong(fraction) * (fraction.length() == 1 ? 10 : 1));
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount is too large: " + text);
+        }
+        return negative ? -minor : minor;
+    }
+
+    private static boolean digits(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts a decimal amount that arrived as a {@code double} (JSON, legacy {@code REAL}
+     * columns) to minor units, rounding half away from zero.
+     */
+    public static long fromDouble(double amount) {
+        if (!Double.isFinite(amount) || Math.abs(amount) >= Long.MAX_VALUE / SCALE) {
+            throw new IllegalArgumentException("Not a valid amount: " + amount);
+        }
+        return Math.round(amount * SCALE);
+    }
+
+    public static String format(long minor) {
+        StringBuilder sb = new StringBuilder(24);
+        append(sb, minor);
+        return sb.toString();
+    }
+
+    public static void append(StringBuilder sb, long minor) {
+        if (minor < 0) {
+            sb.append('-');
+        }
+        long abs = Math.abs(minor);
+        long fraction = abs % SCALE;
+        sb.append(abs / SCALE).append('.');
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+
+    /**
+     * Splits {@code total} in proportion to {@code weights[0..count)} and writes the shares to
+     * {@code shares}. The shares sum to exactly {@code total}; leftover minor units go to the
+     * largest remainders, ties to the lower index. {@code scratch} must hold at least
+     * {@code count} elements and lets callers reuse one buffer between calls.
+     */
+    public static void allocate(long total, long[] weights, int count, long[] shares, long[] scratch) {
+        long weightTotal = 0;
+        for (int i = 0; i < count; i++) {
+            weightTotal += weights[i];
+        }
+        if (weightTotal <= 0) {
+            Arrays.fill(shares, 0, count, 0);
+            return;
+        }
+
+        long allocated = 0;
+        for (int i = 0; i < count; i++) {
+            long product = Math.multiplyExact(weights[i], total);
+            shares[i] = Math.floorDiv(product, weightTotal);
+            allocated += shares[i];
+            // Sort key: remainder first, then the lower index wins a tie.
+            scratch[i] = Math.multiplyExact(Math.floorMod(product, weightTotal), (long) count) + (count - 1 - i);
+        }
+
+        long leftover = total - allocated;
+        if (leftover == 0) {
+            return;
+        }
+        Arrays.sort(scratch, 0, count);
+        for (int k = 0; k < leftover; k++) {
+            int index = count - 1 - (int) (scratch[count - 1 - k] % count);
+            shares[index]++;
+        }
+    }
+}
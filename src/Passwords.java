@@ -0,0 +1,102 @@
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashes.
+ *
+ * A hash is stored as {@code pbkdf2-sha256$<iterations>$<salt>$<hash>}, salt and hash in Base64,
+ * so each row records its own cost. The cost for new hashes is
+ * {@code mealmanager.password.iterations} (600,000 by default). {@link #needsRehash(String)}
+ * flags rows hashed with fewer iterations, and rows from before hashing that still hold the
+ * plain password, so the login path can replace them after a successful sign-in.
+ *
+ * Hashing is deliberately slow and must never run on the Event Dispatch Thread or hold a
+ * database connection.
+ */
+public final class Passwords {
+
+    static final int ITERATIONS = Integer.getInteger("mealmanager.password.iterations", 600_000);
+
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BYTES = 32;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private Passwords() {
+    }
+
+    public static String hash(String password) {
+        return hash(password, ITERATIONS);
+    }
+
+    static String hash(String password, int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$"
+            + base64.encodeToString(pbkdf2(password, salt, iterations, HASH_BYTES));
+    }
+
+    /**
+     * Checks a password against a stored hash or a legacy plain-text password. A null
+     * {@code stored} value, for an unknown username, is checked against a throwaway hash so that
+     * it takes as long as a real miss.
+     */
+    public static boolean verify(String password, String stored) {
+        if (stored == null) {
+            pbkdf2(password, new byte[SALT_BYTES], ITERATIONS, HASH_BYTES);
+            return false;
+        }
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            return false;
+        }
+        try {
+            int iterations = Integer.parseInt(parts[0]);
+            byte[] salt = Base64.getDecoder().decode(parts[1]);
+            byte[] expected = Base64.getDecoder().decode(parts[2]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, iterations, expected.length));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * True for legacy plain-text rows and for hashes made with fewer iterations than the current
+     * setting.
+     */
+    public static boolean needsRehash(String stored) {
+        if (!stored.startsWith(PREFIX)) {
+            return true;
+        }
+        int end = stored.indexOf('$', PREFIX.length());
+        try {
+            return end < 0 || Integer.parseInt(stored.substring(PREFIX.length(), end)) < ITERATIONS;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations, int bytes) {
+        char[] chars = password.toCharArray();
+        PBEKeySpec spec = new PBEKeySpec(chars, salt, iterations, bytes * 8);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available.", e);
+        } finally {
+            spec.clearPassword();
+            Arrays.fill(chars, '\0');
+        }
+    }
+}
@@ -0,0 +1,10 @@
+class RegularUser extends User {
+    public RegularUser(String username) {
+        super(username);
+    }
+
+    @Override
+    public String getRoleSpecificOptions() {
+        return "User Options: View Records.";
+    }
+}
@@ -0,0 +1,104 @@
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Date-range reports over the daily rollups: pick a report and a range, and the result is shown
+ * in a table. Reports run on the database executor, so the dialog stays responsive.
+ */
+public class ReportDialog extends JDialog {
+
+    private final ReportModel model = new ReportModel();
+
+    public ReportDialog(JFrame owner, MealService service, List<MealRepository.Choice> members) {
+        super(owner, "Reports", false);
+
+        JComboBox<Reports.Kind> kindBox = new JComboBox<>(Reports.Kind.values());
+        kindBox.setSelectedItem(Reports.Kind.WEEKLY);
+        JComboBox<MealRepository.Choice> memberBox = new JComboBox<>(members.toArray(new MealRepository.Choice[0]));
+        memberBox.setEnabled(false);
+        LocalDate today = LocalDate.now();
+        JTextField fromField = new JTextField(today.withDayOfMonth(1).minusMonths(2).toString(), 10);
+        JTextField toField = new JTextField(today.toString(), 10);
+        JButton runButton = new JButton("Run");
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controls.add(kindBox);
+        controls.add(memberBox);
+        controls.add(new JLabel("From:"));
+        controls.add(fromField);
+        controls.add(new JLabel("To:"));
+        controls.add(toField);
+        controls.add(runButton);
+
+        JTable table = new JTable(model);
+        table.setDefaultRenderer(Long.class, new AmountRenderer());
+        JLabel titleLabel = new JLabel(" ");
+        titleLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        BusyPanel busyPanel = new BusyPanel();
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(titleLabel, BorderLayout.CENTER);
+        southPanel.add(busyPanel, BorderLayout.SOUTH);
+
+        add(controls, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(southPanel, BorderLayout.SOUTH);
+        setSize(800, 500);
+        setLocationRelativeTo(owner);
+
+        kindBox.addActionListener(e -> memberBox.setEnabled(kindBox.getSelectedItem() == Reports.Kind.MEMBER_TREND));
+        runButton.addActionListener(e -> {
+            Reports.Kind kind = (Reports.Kind) kindBox.getSelectedItem();
+            MealRepository.Choice member = (MealRepository.Choice) memberBox.getSelectedItem();
+            if (kind == Reports.Kind.MEMBER_TREND && member == null) {
+                JOptionPane.showMessageDialog(this, "Choose a member.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            busyPanel.run("Running report...",
+                service.report(kind, fromField.getText().trim(), toField.getText().trim(), member == null ? 0 : member.id),
+                report -> {
+                    model.show(report);
+                    titleLabel.setText(report.rows.isEmpty() ? report.title + " - no entries" : report.title);
+                },
+                ex -> JOptionPane.showMessageDialog(this, "Report failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE),
+                runButton);
+        });
+    }
+
+    private static class ReportModel extends AbstractTableModel {
+        private Reports.Table report;
+
+        void show(Reports.Table report) {
+            this.report = report;
+            fireTableStructureChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return report == null ? 0 : report.rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return report == null ? 0 : report.columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return report.columns[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return report.types[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            return report.rows.get(row)[column];
+        }
+    }
+}
@@ -0,0 +1,476 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Date-range reports answered from daily rollups instead of the raw meal and expense rows.
+ *
+ * {@code daily_totals} holds the mess-wide meals and expense cost for each day, and
+ * {@code daily_member_meals} holds each member's meals for each day. Triggers on {@code meals}
+ * and {@code expenses} keep both current on every insert and delete, the same way
+ * {@link SummaryTables} keeps the running totals. A report reads at most one row per day, or one
+ * per member per day, in its range, however many entries were made on those days.
+ * {@code weekly_member_meals} adds up each member's meals per Monday-to-Sunday week, so the
+ * reports that split costs between all members read one row per member per week for the whole
+ * weeks of a range and daily rows only for the partial weeks at its ends. Days whose rows
+ * {@link Maintenance} has archived keep their rollups, so reports still cover them.
+ *
+ * Costs in reports are split between members in proportion to their meals, the same rule the
+ * billing uses. Amounts are {@link Money} minor units.
+ */
+public class Reports {
+
+    public enum Kind {
+        DAILY("Daily totals"),
+        WEEKLY("Weekly meal rate"),
+        MEMBER_TREND("Member trend"),
+        TOP_SPENDERS("Top spenders");
+
+        private final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * A finished report: column names and classes, and one array of cell values per row. Money
+     * cells are {@code Long} minor units and meal counts are {@code Integer}, as in the home table.
+     */
+    public static class Table {
+        public final String title;
+        public final String[] columns;
+        public final Class<?>[] types;
+        public final List<Object[]> rows = new ArrayList<>();
+
+        Table(String title, String[] columns, Class<?>[] types) {
+            this.title = title;
+            this.columns = columns;
+            this.types = types;
+        }
+    }
+
+    static final int TOP_SPENDERS_LIMIT = 10;
+
+    // Monday of the week a day falls in.
+    private static final String WEEK = "date(day, 'weekday 0', '-6 days')";
+
+    /**
+     * Each member's meals per week in a range, as (week, member_id, meals) rows: weekly rollups
+     * for the whole weeks ?3 to ?4 and daily rollups for the partial weeks ?1 to ?2 and ?5 to
+     * ?6. Bound by {@link #bindWeeks}.
+     */
+    private static final String MEMBER_WEEKS = "SELECT week, member_id, meals FROM weekly_member_meals WHERE week BETWEEN ?3 AND ?4 "
+        + "UNION ALL SELECT " + WEEK + ", member_id, meals FROM daily_member_meals WHERE day BETWEEN ?1 AND ?2 "
+        + "UNION ALL SELECT " + WEEK + ", member_id, meals FROM daily_member_meals WHERE day BETWEEN ?5 AND ?6";
+
+    private static final String[] WEEKLY_SCHEMA = {
+        """
+        CREATE TABLE IF NOT EXISTS weekly_member_meals (
+            week DATE NOT NULL,
+            member_id INTEGER NOT NULL,
+            meals INTEGER NOT NULL DEFAULT 0,
+            PRIMARY KEY (week, member_id)
+        ) WITHOUT ROWID;
+        """,
+        """
+        CREATE TRIGGER IF NOT EXISTS meals_weekly_insert AFTER INSERT ON meals BEGIN
+            INSERT INTO weekly_member_meals (week, member_id, meals)
+                VALUES (date(NEW.date, 'weekday 0', '-6 days'), NEW.member_id, NEW.meal_count)
+                ON CONFLICT (week, member_id) DO UPDATE SET meals = meals + excluded.meals;
+        END;
+        """,
+        // Like the daily rollups, archived days keep their weeks; only deleting a live row adjusts them.
+        """
+        CREATE TRIGGER IF NOT EXISTS meals_weekly_delete AFTER DELETE ON meals
+        WHEN OLD.date >\s""" + Maintenance.ARCHIVED_THROUGH + """
+        BEGIN
+            UPDATE weekly_member_meals SET meals = meals - OLD.meal_count
+                WHERE week = date(OLD.date, 'weekday 0', '-6 days') AND member_id = OLD.member_id;
+        END;
+        """,
+        "INSERT INTO weekly_member_meals (week, member_id, meals) "
+            + "SELECT " + WEEK + ", member_id, SUM(meals) FROM daily_member_meals GROUP BY 1, 2"
+    };
+
+    private static final String[] SCHEMA = {
+        """
+        CREATE TABLE IF NOT EXISTS daily_totals (
+            day DATE PRIMARY KEY,
+            meals INTEGER NOT NULL DEFAULT 0,
+            cost INTEGER NOT NULL DEFAULT 0
+        ) WITHOUT ROWID;
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS daily_member_meals (
+            day DATE NOT NULL,
+            member_id INTEGER NOT NULL,
+            meals INTEGER NOT NULL DEFAULT 0,
+            PRIMARY KEY (day, member_id)
+        ) WITHOUT ROWID;
+        """,
+        "CREATE INDEX IF NOT EXISTS idx_daily_member_meals_member ON daily_member_meals (member_id, day, meals)",
+        """
+        CREATE TRIGGER IF NOT EXISTS meals_daily_insert AFTER INSERT ON meals BEGIN
+            INSERT INTO daily_totals (day, meals) VALUES (NEW.date, NEW.meal_count)
+                ON CONFLICT (day) DO UPDATE SET meals = meals + excluded.meals;
+            INSERT INTO daily_member_meals (day, member_id, meals) VALUES (NEW.date, NEW.member_id, NEW.meal_count)
+                ON CONFLICT (day, member_id) DO UPDATE SET meals = meals + excluded.meals;
+        END;
+        """,
+        """
+        CREATE TRIGGER IF NOT EXISTS meals_daily_delete AFTER DELETE ON meals BEGIN
+            UPDATE daily_totals SET meals = meals - OLD.meal_count WHERE day = OLD.date;
+            UPDATE daily_member_meals SET meals = meals - OLD.meal_count WHERE day = OLD.date AND member_id = OLD.member_id;
+        END;
+        """,
+        """
+        CREATE TRIGGER IF NOT EXISTS expenses_daily_insert AFTER INSERT ON expenses BEGIN
+            INSERT INTO daily_totals (day, cost) VALUES (NEW.date, NEW.amount)
+                ON CONFLICT (day) DO UPDATE SET cost = cost + excluded.cost;
+        END;
+        """,
+        """
+        CREATE TRIGGER IF NOT EXISTS expenses_daily_delete AFTER DELETE ON expenses BEGIN
+            UPDATE daily_totals SET cost = cost - OLD.amount WHERE day = OLD.date;
+        END;
+        """
+    };
+
+    /**
+     * Creates the rollup tables and triggers and fills them from the existing rows.
+     */
+    public static void install(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : SCHEMA) {
+                stmt.execute(sql);
+            }
+        }
+        // Nothing can have been archived before the archive existed (migration 11).
+        rebuild(conn, "");
+    }
+
+    /**
+     * Creates the weekly member rollup and its triggers and fills it from the daily rollup.
+     */
+    public static void installWeekly(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : WEEKLY_SCHEMA) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Recomputes all rollups from the raw rows. Days already archived by {@link Maintenance}
+     * have no raw rows left and keep their rollups. Runs in the caller's transaction if one is
+     * open.
+     */
+    public static void rebuild(Connection conn) throws SQLException {
+        rebuild(conn, Maintenance.archivedThrough(conn));
+        // Weeks are refilled from the days, which also cover the archived ones.
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM weekly_member_meals");
+            stmt.executeUpdate(WEEKLY_SCHEMA[WEEKLY_SCHEMA.length - 1]);
+        }
+    }
+
+    private static void rebuild(Connection conn, String archivedThrough) throws SQLException {
+        String[] statements = {
+            "DELETE FROM daily_totals WHERE day > ?1",
+            """
+            INSERT INTO daily_totals (day, meals, cost)
+            SELECT day, SUM(meals), SUM(cost) FROM (
+                SELECT date AS day, meal_count AS meals, 0 AS cost FROM meals WHERE date > ?1
+                UNION ALL
+                SELECT date, 0, amount FROM expenses WHERE date > ?1
+            ) GROUP BY day
+            """,
+            "DELETE FROM daily_member_meals WHERE day > ?1",
+            """
+            INSERT INTO daily_member_meals (day, member_id, meals)
+            SELECT date, member_id, SUM(meal_count) FROM meals WHERE date > ?1 GROUP BY date, member_id
+            """
+        };
+        for (String sql : statements) {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, archivedThrough);
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Compares the rollups of the days not yet archived with the raw rows, and the weekly
+     * rollup with the daily one, and returns a description of every mismatch.
+     */
+    public static List<String> check(Connection conn) throws SQLException {
+        List<String> problems = new ArrayList<>();
+        String archivedThrough = Maintenance.archivedThrough(conn);
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                SELECT r.day, r.meals AS raw_meals, r.cost AS raw_cost, IFNULL(t.meals, 0) AS meals, IFNULL(t.cost, 0) AS cost
+                FROM (SELECT day, SUM(meals) AS meals, SUM(cost) AS cost FROM (
+                        SELECT date AS day, meal_count AS meals, 0 AS cost FROM meals
+                        UNION ALL
+                        SELECT date, 0, amount FROM expenses
+                        UNION ALL
+                        SELECT day, 0, 0 FROM daily_totals
+                     ) WHERE day > ? GROUP BY day) r
+                LEFT JOIN daily_totals t ON t.day = r.day
+                WHERE IFNULL(t.meals, 0) != r.meals OR IFNULL(t.cost, 0) != r.cost
+                """)) {
+            stmt.setString(1, archivedThrough);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                problems.add("daily_totals for " + rs.getString("day") + " has " + rs.getLong("meals") + " meals and "
+                    + Money.format(rs.getLong("cost")) + " cost but the raw rows have " + rs.getLong("raw_meals")
+                    + " and " + Money.format(rs.getLong("raw_cost")));
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                SELECT r.day, r.member_id, r.meals AS raw_meals, IFNULL(d.meals, 0) AS meals
+                FROM (SELECT day, member_id, SUM(meals) AS meals FROM (
+                        SELECT date AS day, member_id, meal_count AS meals FROM meals
+                        UNION ALL
+                        SELECT day, member_id, 0 FROM daily_member_meals
+                     ) WHERE day > ? GROUP BY day, member_id) r
+                LEFT JOIN daily_member_meals d ON d.day = r.day AND d.member_id = r.member_id
+                WHERE IFNULL(d.meals, 0) != r.meals
+                """)) {
+            stmt.setString(1, archivedThrough);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                problems.add("daily_member_meals for member " + rs.getInt("member_id") + " on " + rs.getString("day")
+                    + " has " + rs.getLong("meals") + " meals but the raw rows have " + rs.getLong("raw_meals"));
+            }
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("""
+                SELECT r.week, r.member_id, r.meals AS daily_meals, IFNULL(w.meals, 0) AS meals
+                FROM (SELECT week, member_id, SUM(meals) AS meals FROM (
+                        SELECT date(day, 'weekday 0', '-6 days') AS week, member_id, meals FROM daily_member_meals
+                        UNION ALL
+                        SELECT week, member_id, 0 FROM weekly_member_meals
+                     ) GROUP BY week, member_id) r
+                LEFT JOIN weekly_member_meals w ON w.week = r.week AND w.member_id = r.member_id
+                WHERE IFNULL(w.meals, 0) != r.meals
+                """)) {
+            while (rs.next()) {
+                problems.add("weekly_member_meals for member " + rs.getInt("member_id") + " in the week of " + rs.getString("week")
+                    + " has " + rs.getLong("meals") + " meals but the daily rollup has " + rs.getLong("daily_meals"));
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Builds a report for the days from {@code from} to {@code to}, both inclusive and
+     * {@code YYYY-MM-DD}. {@code memberId} is only used by {@link Kind#MEMBER_TREND}.
+     */
+    public static Table run(Connection conn, Kind kind, String from, String to, int memberId) throws SQLException {
+        switch (kind) {
+            case DAILY:
+                return daily(conn, from, to);
+            case WEEKLY:
+                return weekly(conn, from, to);
+            case MEMBER_TREND:
+                return memberTrend(conn, memberId, from, to);
+            case TOP_SPENDERS:
+                return topSpenders(conn, from, to, TOP_SPENDERS_LIMIT);
+            default:
+                throw new IllegalArgumentException("Unknown report " + kind + ".");
+        }
+    }
+
+    static Table daily(Connection conn, String from, String to) throws SQLException {
+        Table table = new Table("Daily totals, " + from + " to " + to,
+            new String[]{"Day", "Meals", "Cost", "Meal Rate"},
+            new Class<?>[]{String.class, Integer.class, Long.class, Long.class});
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT day, meals, cost FROM daily_totals WHERE day BETWEEN ? AND ? ORDER BY day")) {
+            stmt.setString(1, from);
+            stmt.setString(2, to);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                int meals = rs.getInt("meals");
+                long cost = rs.getLong("cost");
+                table.rows.add(new Object[]{rs.getString("day"), meals, cost, rate(cost, meals)});
+            }
+        }
+        return table;
+    }
+
+    static Table weekly(Connection conn, String from, String to) throws SQLException {
+        Table table = new Table("Weekly meal rate, " + from + " to " + to,
+            new String[]{"Week Of", "Meals", "Cost", "Meal Rate"},
+            new Class<?>[]{String.class, Integer.class, Long.class, Long.class});
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT " + WEEK + " AS week, SUM(meals) AS meals, SUM(cost) AS cost "
+                + "FROM daily_totals WHERE day BETWEEN ? AND ? GROUP BY week ORDER BY week")) {
+            stmt.setString(1, from);
+            stmt.setString(2, to);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                int meals = rs.getInt("meals");
+                long cost = rs.getLong("cost");
+                table.rows.add(new Object[]{rs.getString("week"), meals, cost, rate(cost, meals)});
+            }
+        }
+        return table;
+    }
+
+    /**
+     * One member's meals per week next to the mess totals for that week, with the member's share
+     * of the week's cost. Each week's cost is split over every member who ate that week with
+     * {@link Money#allocate}, as billing does, so the shares of all members add up to it exactly.
+     */
+    static Table memberTrend(Connection conn, int memberId, String from, String to) throws SQLException {
+        Table table = new Table("Member trend, " + from + " to " + to,
+            new String[]{"Week Of", "Meals", "Mess Meals", "Meal Rate", "Cost"},
+            new Class<?>[]{String.class, Integer.class, Integer.class, Long.class, Long.class});
+        Map<String, Long> weekCosts = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT t.week, IFNULL(m.meals, 0) AS meals, t.meals AS mess_meals, t.cost "
+                + "FROM (SELECT " + WEEK + " AS week, SUM(meals) AS meals, SUM(cost) AS cost "
+                + "      FROM daily_totals WHERE day BETWEEN ?1 AND ?2 GROUP BY week) t "
+                + "LEFT JOIN (SELECT " + WEEK + " AS week, SUM(meals) AS meals "
+                + "      FROM daily_member_meals WHERE member_id = ?3 AND day BETWEEN ?1 AND ?2 GROUP BY week) m ON m.week = t.week "
+                + "ORDER BY t.week")) {
+            stmt.setString(1, from);
+            stmt.setString(2, to);
+            stmt.setInt(3, memberId);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                int messMeals = rs.getInt("mess_meals");
+                long cost = rs.getLong("cost");
+                table.rows.add(new Object[]{rs.getString("week"), rs.getInt("meals"), messMeals, rate(cost, messMeals), 0L});
+                weekCosts.put(rs.getString("week"), cost);
+            }
+        }
+
+        Map<String, Long> shares = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT week, member_id, SUM(meals) AS meals FROM ("
+                + MEMBER_WEEKS + ") GROUP BY week, member_id ORDER BY week, member_id")) {
+            bindWeeks(stmt, from, to);
+            ResultSet rs = stmt.executeQuery();
+            long[] meals = new long[16];
+            boolean more = rs.next();
+            while (more) {
+                String week = rs.getString("week");
+                int count = 0;
+                int self = -1;
+                do {
+                    if (count == meals.length) {
+                        meals = Arrays.copyOf(meals, count * 2);
+                    }
+                    if (rs.getInt("member_id") == memberId) {
+                        self = count;
+                    }
+                    meals[count++] = rs.getLong("meals");
+                    more = rs.next();
+                } while (more && rs.getString("week").equals(week));
+                if (self >= 0) {
+                    long[] costs = new long[count];
+                    Money.allocate(weekCosts.getOrDefault(week, 0L), meals, count, costs, new long[count]);
+                    shares.put(week, costs[self]);
+                }
+            }
+        }
+        for (Object[] row : table.rows) {
+            row[4] = shares.getOrDefault((String) row[0], 0L);
+        }
+        return table;
+    }
+
+    /**
+     * Members ranked by their share of the range's cost. The whole cost is split exactly over
+     * every member who ate in the range before the top {@code limit} are taken.
+     */
+    static Table topSpenders(Connection conn, String from, String to, int limit) throws SQLException {
+        Table table = new Table("Top spenders, " + from + " to " + to,
+            new String[]{"Member Name", "Meals", "Cost", "Share"},
+            new Class<?>[]{String.class, Integer.class, Long.class, String.class});
+
+        long totalCost;
+        long totalMeals;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT IFNULL(SUM(meals), 0) AS meals, IFNULL(SUM(cost), 0) AS cost FROM daily_totals WHERE day BETWEEN ? AND ?")) {
+            stmt.setString(1, from);
+            stmt.setString(2, to);
+            ResultSet rs = stmt.executeQuery();
+            rs.next();
+            totalMeals = rs.getLong("meals");
+            totalCost = rs.getLong("cost");
+        }
+
+        List<String> names = new ArrayList<>();
+        long[] meals = new long[16];
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT d.member_id, IFNULL(m.name, 'Member ' || d.member_id) AS name, d.meals "
+                + "FROM (SELECT member_id, SUM(meals) AS meals FROM (" + MEMBER_WEEKS + ") GROUP BY member_id) d "
+                + "LEFT JOIN members m ON m.id = d.member_id "
+                + "WHERE d.meals != 0")) {
+            bindWeeks(stmt, from, to);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                if (names.size() == meals.length) {
+                    meals = Arrays.copyOf(meals, meals.length * 2);
+                }
+                meals[names.size()] = rs.getLong("meals");
+                names.add(rs.getString("name"));
+            }
+        }
+
+        int count = names.size();
+        long[] costs = new long[count];
+        Money.allocate(totalMeals > 0 ? totalCost : 0, meals, count, costs, new long[count]);
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingLong(i -> costs[i]).reversed().thenComparing(i -> names.get(i)));
+        for (int i = 0; i < Math.min(limit, count); i++) {
+            int m = order[i];
+            String share = totalCost != 0 ? String.format("%.1f%%", 100.0 * costs[m] / totalCost) : "";
+            table.rows.add(new Object[]{names.get(m), (int) meals[m], costs[m], share});
+        }
+        return table;
+    }
+
+    /**
+     * Binds the ranges of {@link #MEMBER_WEEKS} for the days from {@code from} to {@code to}: the
+     * whole weeks inside it, and the days before the first and after the last of them. A range
+     * without a whole week is read from the daily rollup alone.
+     */
+    private static void bindWeeks(PreparedStatement stmt, String from, String to) throws SQLException {
+        LocalDate start = LocalDate.parse(from);
+        LocalDate end = LocalDate.parse(to);
+        LocalDate firstWeek = start.with(TemporalAdjusters.nextOrSame(DayOfWeek.MONDAY));
+        LocalDate lastWeek = end.with(TemporalAdjusters.previousOrSame(DayOfWeek.SUNDAY)).minusDays(6);
+        LocalDate headEnd = firstWeek.minusDays(1).isBefore(end) ? firstWeek.minusDays(1) : end;
+        LocalDate tailStart = lastWeek.plusDays(7).isAfter(headEnd) ? lastWeek.plusDays(7) : headEnd.plusDays(1);
+        stmt.setString(1, from);
+        stmt.setString(2, headEnd.toString());
+        stmt.setString(3, firstWeek.toString());
+        stmt.setString(4, lastWeek.toString());
+        stmt.setString(5, tailStart.toString());
+        stmt.setString(6, to);
+    }
+
+    private static long rate(long cost, long meals) {
+        return meals > 0 ? Math.round((double) cost / meals) : 0;
+    }
+}
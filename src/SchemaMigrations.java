@@ -0,0 +1,284 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned schema migrations.
+ *
+ * The schema version is stored in {@code PRAGMA user_version}. On startup every migration newer
+ * than the stored version is applied in order, each in its own transaction together with the
+ * version bump, and the running totals are rebuilt afterwards. New schema changes are added to
+ * the end of {@link #MIGRATIONS}; existing entries must never be edited once released.
+ */
+public class SchemaMigrations {
+
+    interface Migration {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private static final Migration[] MIGRATIONS = {
+        // 1: base tables and the default admin account
+        MealManagerGUI::createDatabase,
+        // 2: running totals for the dashboard
+        SummaryTables::install,
+        // 3: covering indexes for per-member and date-range queries
+        conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_meals_member_date ON meals (member_id, date, meal_count)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_expenses_date ON expenses (date, amount)");
+                stmt.execute("ANALYZE");
+            }
+        },
+        // 4: billing periods with closed-period snapshots
+        BillingPeriods::install,
+        // 5: name index for the paged, name-sorted member table
+        conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_members_name ON members (name COLLATE NOCASE, id)");
+            }
+        },
+        // 6: money columns as INTEGER minor units instead of REAL
+        SchemaMigrations::convertMoneyToMinorUnits,
+        // 7: append-only journal of meal, deposit and expense entries
+        conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(EventJournal.SCHEMA);
+            }
+        },
+        // 8: explicit user roles; passwords are hashed on the next successful sign-in
+        conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE users ADD COLUMN role TEXT NOT NULL DEFAULT 'member' CHECK (role IN ('admin', 'member'))");
+                // Until now the admin was whoever signed in as "admin", in any case.
+                stmt.execute("UPDATE users SET role = 'admin' WHERE username = 'admin' COLLATE NOCASE");
+            }
+        },
+        // 9: daily rollups for date-range reports
+        Reports::install,
+        // 10: which mess (tenant) the database belongs to
+        TenantRouter::install,
+        // 11: carry-forward totals of archived meals and expenses
+        Maintenance::install,
+        // 12: weekly per-member rollups for the reports that split costs between members
+        Reports::installWeekly,
+        // 13: hash the default admin password that migration 1 seeds as plain text
+        SchemaMigrations::hashDefaultAdmin,
+    };
+
+    /**
+     * Tables with money columns, their INTEGER definitions, and the SELECT list that converts
+     * the old REAL values to {@link Money} minor units.
+     */
+    private static final String[][] MONEY_TABLES = {
+        {"members", """
+            CREATE TABLE members (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                user_id INTEGER NOT NULL UNIQUE,
+                name TEXT NOT NULL,
+                deposit INTEGER NOT NULL,
+                balance INTEGER NOT NULL,
+                FOREIGN KEY (user_id) REFERENCES users (id)
+            )
+            """, "id, user_id, name, CAST(ROUND(deposit * 100) AS INTEGER), CAST(ROUND(balance * 100) AS INTEGER)"},
+        {"expenses", """
+            CREATE TABLE expenses (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                description TEXT NOT NULL,
+                amount INTEGER NOT NULL,
+                date DATE NOT NULL
+            )
+            """, "id, description, CAST(ROUND(amount * 100) AS INTEGER), date"},
+        {"mess_totals", """
+            CREATE TABLE mess_totals (
+                id INTEGER PRIMARY KEY CHECK (id = 1),
+                total_cost INTEGER NOT NULL DEFAULT 0,
+                total_meals INTEGER NOT NULL DEFAULT 0,
+                total_deposits INTEGER NOT NULL DEFAULT 0,
+                carried_cost INTEGER NOT NULL DEFAULT 0
+            )
+            """, "id, CAST(ROUND(total_cost * 100) AS INTEGER), total_meals, CAST(ROUND(total_deposits * 100) AS INTEGER), "
+                + "CAST(ROUND(carried_cost * 100) AS INTEGER)"},
+        {"member_totals", """
+            CREATE TABLE member_totals (
+                member_id INTEGER PRIMARY KEY,
+                meals INTEGER NOT NULL DEFAULT 0,
+                carried_cost INTEGER NOT NULL DEFAULT 0
+            )
+            """, "member_id, meals, CAST(ROUND(carried_cost * 100) AS INTEGER)"},
+        {"billing_periods", """
+            CREATE TABLE billing_periods (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                start_date DATE NOT NULL,
+                end_date DATE,
+                total_cost INTEGER,
+                total_meals INTEGER,
+                meal_rate REAL
+            )
+            """, "id, start_date, end_date, CAST(ROUND(total_cost * 100) AS INTEGER), total_meals, meal_rate * 100"},
+        {"period_snapshots", """
+            CREATE TABLE period_snapshots (
+                period_id INTEGER NOT NULL,
+                member_id INTEGER NOT NULL,
+                meals INTEGER NOT NULL,
+                cost INTEGER NOT NULL,
+                deposit INTEGER NOT NULL,
+                balance INTEGER NOT NULL,
+                PRIMARY KEY (period_id, member_id),
+                FOREIGN KEY (period_id) REFERENCES billing_periods (id),
+                FOREIGN KEY (member_id) REFERENCES members (id)
+            )
+            """, "period_id, member_id, meals, CAST(ROUND(cost * 100) AS INTEGER), CAST(ROUND(deposit * 100) AS INTEGER), "
+                + "CAST(ROUND(balance * 100) AS INTEGER)"},
+    };
+
+    /**
+     * Queries that must be answered from an index rather than a full table scan.
+     */
+    static final String[] HOT_QUERIES = {
+        "SELECT member_id, SUM(meal_count) FROM meals GROUP BY member_id",
+        "SELECT m.id, IFNULL(SUM(ml.meal_count), 0) FROM members m LEFT JOIN meals ml ON m.id = ml.member_id GROUP BY m.id",
+        "SELECT IFNULL(SUM(meal_count), 0) FROM meals WHERE member_id = 1 AND date BETWEEN '2024-01-01' AND '2024-01-31'",
+        "SELECT IFNULL(SUM(amount), 0) FROM expenses WHERE date BETWEEN '2024-01-01' AND '2024-01-31'",
+        "SELECT IFNULL(SUM(meal_count), 0) FROM meals WHERE date >= '2024-01-01'",
+        "SELECT IFNULL(SUM(amount), 0) FROM expenses WHERE date >= '2024-01-01'",
+        "SELECT day, meals, cost FROM daily_totals WHERE day BETWEEN '2024-01-01' AND '2024-03-31'",
+        "SELECT member_id, SUM(meals) FROM daily_member_meals WHERE day BETWEEN '2024-01-01' AND '2024-03-31' GROUP BY member_id",
+        "SELECT day, meals FROM daily_member_meals WHERE member_id = 1 AND day BETWEEN '2024-01-01' AND '2024-03-31'",
+        "SELECT week, member_id, meals FROM weekly_member_meals WHERE week BETWEEN '2024-01-01' AND '2024-03-25'",
+    };
+
+    public static int currentVersion() {
+        return MIGRATIONS.length;
+    }
+
+    public static void migrate(Connection conn) throws SQLException {
+        int version = getVersion(conn);
+        if (version > MIGRATIONS.length) {
+            throw new SQLException("Database schema version " + version + " is newer than this application supports ("
+                + MIGRATIONS.length + ").");
+        }
+
+        if (version == 0 && isEmpty(conn)) {
+            // auto_vacuum only takes effect before the first table is created. Switching to WAL has
+            // already written the header, so rebuild the still empty file with it.
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                stmt.execute("VACUUM");
+            }
+        }
+
+        for (int i = version; i < MIGRATIONS.length; i++) {
+            int target = i + 1;
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                MIGRATIONS[i].apply(conn);
+                stmt.execute("PRAGMA user_version = " + target);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+
+        if (version < MIGRATIONS.length) {
+            SummaryTables.rebuild(conn);
+        }
+    }
+
+    /**
+     * Replaces the seeded admin password with a hash while it is still the plain-text default,
+     * so a new database does not keep it until the first sign-in. Hashing is skipped when the
+     * admin has already changed or rehashed it.
+     */
+    private static void hashDefaultAdmin(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM users WHERE username = 'admin' AND password = 'password123'")) {
+            if (!rs.next()) {
+                return;
+            }
+            try (PreparedStatement update = conn.prepareStatement("UPDATE users SET password = ?1 WHERE id = ?2")) {
+                update.setString(1, Passwords.hash("password123"));
+                update.setInt(2, rs.getInt("id"));
+                update.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * SQLite cannot change a column's type in place, so each money table is copied to a temporary
+     * table with its amounts converted, dropped, recreated with INTEGER columns and refilled. The
+     * table's indexes and triggers are recreated from their stored SQL afterwards, once the rows
+     * are back, and the AUTOINCREMENT counter is restored so deleted ids are not reused.
+     */
+    private static void convertMoneyToMinorUnits(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String[] table : MONEY_TABLES) {
+                String name = table[0];
+                List<String> dependents = new ArrayList<>();
+                ResultSet rs = stmt.executeQuery("SELECT sql FROM sqlite_master WHERE tbl_name = '" + name
+                    + "' AND type IN ('index', 'trigger') AND sql IS NOT NULL ORDER BY type, name");
+                while (rs.next()) {
+                    dependents.add(rs.getString("sql"));
+                }
+                Long sequence = null;
+                rs = stmt.executeQuery("SELECT seq FROM sqlite_sequence WHERE name = '" + name + "'");
+                if (rs.next()) {
+                    sequence = rs.getLong("seq");
+                }
+                rs.close();
+
+                stmt.execute("CREATE TEMP TABLE money_copy AS SELECT " + table[2] + " FROM " + name);
+                stmt.execute("DROP TABLE " + name);
+                stmt.execute(table[1]);
+                stmt.execute("INSERT INTO " + name + " SELECT * FROM money_copy");
+                stmt.execute("DROP TABLE money_copy");
+                if (sequence != null) {
+                    stmt.execute("DELETE FROM sqlite_sequence WHERE name = '" + name + "'");
+                    stmt.execute("INSERT INTO sqlite_sequence (name, seq) VALUES ('" + name + "', " + sequence + ")");
+                }
+                for (String sql : dependents) {
+                    stmt.execute(sql);
+                }
+            }
+        }
+    }
+
+    private static boolean isEmpty(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master LIMIT 1")) {
+            return !rs.next();
+        }
+    }
+
+    static int getVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Runs {@code EXPLAIN QUERY PLAN} for each of the {@link #HOT_QUERIES} and returns a
+     * description of every step that scans the raw tables or the report rollups without an index.
+     */
+    public static List<String> checkQueryPlans(Connection conn) throws SQLException {
+        List<String> problems = new ArrayList<>();
+        try (Statement stmt = conn.createStatement()) {
+            for (String query : HOT_QUERIES) {
+                ResultSet rs = stmt.executeQuery("EXPLAIN QUERY PLAN " + query);
+                while (rs.next()) {
+                    String detail = rs.getString("detail");
+                    boolean watched = detail.matches("(SCAN|SEARCH) (meals|expenses|ml|daily_totals|daily_member_meals|weekly_member_meals)\\b.*");
+                    if (watched && !detail.contains("INDEX") && !detail.contains("PRIMARY KEY")) {
+                        problems.add(query + " -> " + detail);
+                    }
+                }
+            }
+        }
+        return problems;
+    }
+}
@@ -0,0 +1,188 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Running totals for the dashboard.
+ *
+ * {@code mess_totals} holds the single row of mess-wide totals and {@code member_totals} holds
+ * each member's meal count for the open billing period (see {@link BillingPeriods}). Both are
+ * kept current by triggers on the raw tables, so the home page reads one row per member instead
+ * of aggregating every meal and expense.
+ */
+public class SummaryTables {
+
+    private static final String[] SCHEMA = {
+        """
+        CREATE TABLE IF NOT EXISTS mess_totals (
+            id INTEGER PRIMARY KEY CHECK (id = 1),
+            total_cost REAL NOT NULL DEFAULT 0,
+            total_meals INTEGER NOT NULL DEFAULT 0,
+            total_deposits REAL NOT NULL DEFAULT 0
+        );
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS member_totals (
+            member_id INTEGER PRIMARY KEY,
+            meals INTEGER NOT NULL DEFAULT 0
+        );
+        """,
+        """
+        CREATE TRIGGER IF NOT EXISTS expenses_totals_insert AFTER INSERT ON expenses BEGIN
+            UPDATE mess_totals SET total_cost = total_cost + NEW.amount WHERE id = 1;
+        END;
+        """,
+        """
+        CREATE TRIGGER IF NOT EXISTS expenses_totals_delete AFTER DELETE ON expenses BEGIN
+            UPDATE mess_totals SET total_cost = total_cost - OLD.amount WHERE id = 1;
+        END;
+        """,
+        """
+        CREATE TRIGGER IF NOT EXISTS meals_totals_insert AFTER INSERT ON meals BEGIN
+            UPDATE mess_totals SET total_meals = total_meals + NEW.meal_count WHERE id = 1;
+            INSERT INTO member_totals (member_id, meals) VALUES (NEW.member_id, NEW.meal_count)
+                ON CONFLICT (member_id) DO UPDATE SET meals = meals + excluded.meals;
+        END;
+        """,
+        """
+        CREATE TRIGGER IF NOT EXISTS meals_totals_delete AFTER DELETE ON meals BEGIN
+            UPDATE mess_totals SET total_meals = total_meals - OLD.meal_count WHERE id = 1;
+            UPDATE member_totals SET meals = meals - OLD.meal_count WHERE member_id = OLD.member_id;
+        END;
+        """,
+        """
+        CREATE TRIGGER IF NOT EXISTS members_totals_insert AFTER INSERT ON members BEGIN
+            UPDATE mess_totals SET total_deposits = total_deposits + NEW.deposit WHERE id = 1;
+        END;
+        """,
+        """
+        CREATE TRIGGER IF NOT EXISTS members_totals_update AFTER UPDATE OF deposit ON members BEGIN
+            UPDATE mess_totals SET total_deposits = total_deposits + NEW.deposit - OLD.deposit WHERE id = 1;
+        END;
+        """,
+        """
+        CREATE TRIGGER IF NOT EXISTS members_totals_delete AFTER DELETE ON members BEGIN
+            UPDATE mess_totals SET total_deposits = total_deposits - OLD.deposit WHERE id = 1;
+        END;
+        """
+    };
+
+    /**
+     * Creates the summary tables and triggers if they are missing. The totals themselves are
+     * filled by {@link #rebuild(Connection)} once all migrations have run.
+     */
+    public static void install(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : SCHEMA) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Recomputes every running total from the raw rows of the open billing period and the
+     * snapshots of closed ones. Runs in its own transaction unless the caller already has one
+     * open.
+     */
+    public static void rebuild(Connection conn) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        if (autoCommit) {
+            conn.setAutoCommit(false);
+        }
+        try (PreparedStatement totals = conn.prepareStatement("""
+                INSERT INTO mess_totals (id, total_cost, total_meals, total_deposits, carried_cost) VALUES (1,
+                    (SELECT IFNULL(SUM(amount), 0) FROM expenses WHERE date >= ?1),
+                    (SELECT IFNULL(SUM(meal_count), 0) FROM meals WHERE date >= ?1),
+                    (SELECT IFNULL(SUM(deposit), 0) FROM members),
+                    (SELECT IFNULL(SUM(total_cost), 0) FROM billing_periods WHERE end_date IS NOT NULL))
+                """);
+             PreparedStatement memberTotals = conn.prepareStatement("""
+                INSERT INTO member_totals (member_id, meals, carried_cost)
+                SELECT member_id, SUM(meals), SUM(cost) FROM (
+                    SELECT member_id, meal_count AS meals, 0 AS cost FROM meals WHERE date >= ?1
+                    UNION ALL
+                    SELECT member_id, 0, cost FROM period_snapshots
+                ) GROUP BY member_id
+                """);
+             Statement stmt = conn.createStatement()) {
+            String periodStart = BillingPeriods.openPeriodStart(conn);
+
+            stmt.executeUpdate("DELETE FROM mess_totals");
+            totals.setString(1, periodStart);
+            totals.executeUpdate();
+
+            stmt.executeUpdate("DELETE FROM member_totals");
+            memberTotals.setString(1, periodStart);
+            memberTotals.executeUpdate();
+            if (autoCommit) {
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            if (autoCommit) {
+                conn.rollback();
+            }
+            throw e;
+        } finally {
+            if (autoCommit) {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Compares the running totals with the raw rows and returns a description of every
+     * mismatch. An empty list means the totals are consistent.
+     */
+    public static List<String> check(Connection conn) throws SQLException {
+        List<String> problems = new ArrayList<>();
+        String periodStart = BillingPeriods.openPeriodStart(conn);
+        try (PreparedStatement totals = conn.prepareStatement("""
+                SELECT t.total_cost, t.total_meals, t.total_deposits, t.carried_cost,
+                    (SELECT IFNULL(SUM(amount), 0) FROM expenses WHERE date >= ?1) AS raw_cost,
+                    (SELECT IFNULL(SUM(meal_count), 0) FROM meals WHERE date >= ?1) AS raw_meals,
+                    (SELECT IFNULL(SUM(deposit), 0) FROM members) AS raw_deposits,
+                    (SELECT IFNULL(SUM(total_cost), 0) FROM billing_periods WHERE end_date IS NOT NULL) AS raw_carried
+                FROM mess_totals t WHERE t.id = 1
+                """);
+             PreparedStatement memberTotals = conn.prepareStatement("""
+                SELECT r.member_id, r.meals AS raw_meals, IFNULL(t.meals, 0) AS meals
+                FROM (SELECT member_id, SUM(meal_count) AS meals FROM meals WHERE date >= ?1 GROUP BY member_id) r
+                LEFT JOIN member_totals t ON t.member_id = r.member_id
+                WHERE IFNULL(t.meals, 0) != r.meals
+                UNION ALL
+                SELECT t.member_id, 0, t.meals FROM member_totals t
+                WHERE t.meals != 0 AND NOT EXISTS (SELECT 1 FROM meals m WHERE m.member_id = t.member_id AND m.date >= ?1)
+                """)) {
+            totals.setString(1, periodStart);
+            ResultSet rs = totals.executeQuery();
+            if (!rs.next()) {
+                problems.add("mess_totals row is missing");
+            } else {
+                if (rs.getLong("total_cost") != rs.getLong("raw_cost")) {
+                    problems.add("total_cost is " + Money.format(rs.getLong("total_cost")) + " but expenses sum to " + Money.format(rs.getLong("raw_cost")));
+                }
+                if (rs.getLong("total_meals") != rs.getLong("raw_meals")) {
+                    problems.add("total_meals is " + rs.getLong("total_meals") + " but meals sum to " + rs.getLong("raw_meals"));
+                }
+                if (rs.getLong("total_deposits") != rs.getLong("raw_deposits")) {
+                    problems.add("total_deposits is " + Money.format(rs.getLong("total_deposits")) + " but deposits sum to " + Money.format(rs.getLong("raw_deposits")));
+                }
+                if (rs.getLong("carried_cost") != rs.getLong("raw_carried")) {
+                    problems.add("carried_cost is " + Money.format(rs.getLong("carried_cost")) + " but closed periods sum to " + Money.format(rs.getLong("raw_carried")));
+                }
+            }
+
+            memberTotals.setString(1, periodStart);
+            rs = memberTotals.executeQuery();
+            while (rs.next()) {
+                problems.add("member " + rs.getInt("member_id") + " has " + rs.getLong("meals")
+                    + " meals in member_totals but " + rs.getLong("raw_meals") + " in meals");
+            }
+        }
+        return problems;
+    }
+}
@@ -0,0 +1,458 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Routes each mess (tenant) to its own SQLite database, so messes never share a writer.
+ *
+ * The default mess lives in {@code meal_manager.db} and is served by the usual
+ * {@link MealService#getInstance()}. Every other mess is a file {@code <id>.db} in the directory
+ * named by {@code mealmanager.tenants.dir} ({@code messes} by default). Each of those shards
+ * gets its own small {@link ConnectionPool}, executor, {@link EventJournal} writer and
+ * {@link Ledger} when it is first used. The {@code mess} table in every database records which
+ * mess it belongs to, so its users and members cannot be served under another mess's name.
+ *
+ * Callers {@link #acquire} a {@link Lease} and close it when done. A shard with no leases is
+ * closed after {@code mealmanager.tenant.idle.minutes} (10 by default), or sooner when more than
+ * {@code mealmanager.tenant.max.open} (16) shards are open. {@link #summaries()} reads every
+ * mess's totals at once, each on its own shard's executor.
+ */
+public class TenantRouter implements AutoCloseable {
+
+    public static final String DEFAULT_TENANT = "default";
+
+    static final String SCHEMA = """
+        CREATE TABLE IF NOT EXISTS mess (
+            id INTEGER PRIMARY KEY CHECK (id = 1),
+            tenant TEXT NOT NULL,
+            name TEXT NOT NULL
+        )
+        """;
+
+    private static final Pattern TENANT_ID = Pattern.compile("[a-z0-9][a-z0-9_-]{0,39}");
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(Long.getLong("mealmanager.tenant.idle.minutes", 10));
+    private static final int MAX_OPEN = Integer.getInteger("mealmanager.tenant.max.open", 16);
+    private static final int SHARD_POOL_SIZE = Integer.getInteger("mealmanager.tenant.pool.size", 2);
+
+    private static final TenantRouter INSTANCE = new TenantRouter(Path.of(System.getProperty("mealmanager.tenants.dir", "messes")));
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(INSTANCE::close, "meal-tenant-shutdown"));
+    }
+
+    /**
+     * A hold on one mess's service. The shard stays open until every lease on it is closed.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Shard shard;
+        private final String tenant;
+        private final String name;
+        private final MealService service;
+        private final ConnectionPool pool;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(Shard shard, String tenant, String name, MealService service, ConnectionPool pool) {
+            this.shard = shard;
+            this.tenant = tenant;
+            this.name = name;
+            this.service = service;
+            this.pool = pool;
+        }
+
+        public MealService service() {
+            return service;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        ConnectionPool getPool() {
+            return pool;
+        }
+
+        @Override
+        public void close() {
+            if (shard != null && released.compareAndSet(false, true)) {
+                release(shard);
+            }
+        }
+    }
+
+    /**
+     * One mess's totals, or the reason they could not be read.
+     */
+    public static final class TenantSummary {
+        public final String tenant;
+        public final String name;
+        public final MessSummary summary;
+        public final String error;
+
+        TenantSummary(String tenant, String name, MessSummary summary, String error) {
+            this.tenant = tenant;
+            this.name = name;
+            this.summary = summary;
+            this.error = error;
+        }
+    }
+
+    private final class Shard {
+        final String tenant;
+        final CompletableFuture<Void> ready = new CompletableFuture<>();
+        ConnectionPool pool;
+        MealRepository repository;
+        MealService service;
+        String name;
+        // Guarded by the router.
+        int leases;
+        long idleSince;
+
+        Shard(String tenant) {
+            this.tenant = tenant;
+        }
+
+        void open(String newName, String adminPassword) throws SQLException {
+            Path file = fileFor(tenant);
+            boolean create = newName != null;
+            if (create == Files.exists(file)) {
+                throw new IllegalArgumentException(create ? "A mess called " + tenant + " already exists." : "There is no mess called " + tenant + ".");
+            }
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                throw new SQLException("Cannot create " + directory + ": " + e.getMessage(), e);
+            }
+            pool = new ConnectionPool("jdbc:sqlite:" + file, SHARD_POOL_SIZE);
+            try {
+                try (Connection conn = pool.getConnection()) {
+                    SchemaMigrations.migrate(conn);
+                    if (create) {
+                        claim(conn, tenant, newName, adminPassword);
+                    }
+                    name = messName(conn, tenant);
+                }
+                repository = MealRepository.open(tenant, SHARD_POOL_SIZE, pool);
+                repository.scheduleMaintenance();
+                service = new MealService(repository);
+            } catch (SQLException | RuntimeException e) {
+                pool.close();
+                throw e;
+            }
+        }
+
+        void close() {
+            if (repository != null) {
+                repository.close();
+            }
+            if (pool != null) {
+                pool.close();
+            }
+        }
+    }
+
+    private final Path directory;
+    private final Map<String, Shard> shards = new HashMap<>();
+    // Shards being closed, so a reopen waits until the old writer has finished.
+    private final Map<String, CompletableFuture<Void>> closing = new HashMap<>();
+    private final ExecutorService opener;
+    private final ScheduledExecutorService evictor;
+    private CompletableFuture<String> defaultName;
+    private boolean closed;
+
+    public TenantRouter(Path directory) {
+        this.directory = directory;
+        AtomicInteger count = new AtomicInteger();
+        this.opener = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "meal-tenant-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "meal-tenant-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, IDLE_MILLIS / 4);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public static TenantRouter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Migration 10: the record of which mess a database belongs to. Existing databases become
+     * the default mess.
+     */
+    static void install(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(SCHEMA);
+            stmt.execute("INSERT OR IGNORE INTO mess (id, tenant, name) VALUES (1, '" + DEFAULT_TENANT + "', 'Main Mess')");
+        }
+    }
+
+    private static String messName(Connection conn, String tenant) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT tenant, name FROM mess WHERE id = 1")) {
+            ResultSet rs = stmt.executeQuery();
+            if (!rs.next()) {
+                throw new SQLException("The database of mess " + tenant + " has no mess record.");
+            }
+            if (!rs.getString("tenant").equals(tenant)) {
+                throw new SQLException("The database of mess " + tenant + " belongs to mess " + rs.getString("tenant") + ".");
+            }
+            return rs.getString("name");
+        }
+    }
+
+    private static void claim(Connection conn, String tenant, String name, String adminPassword) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement("UPDATE mess SET tenant = ?, name = ? WHERE id = 1")) {
+                stmt.setString(1, tenant);
+                stmt.setString(2, name);
+                stmt.executeUpdate();
+            }
+            // A new database starts with the well-known default admin password; replace it.
+            try (PreparedStatement stmt = conn.prepareStatement("UPDATE users SET password = ? WHERE username = 'admin'")) {
+                stmt.setString(1, Passwords.hash(adminPassword));
+                stmt.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private Path fileFor(String tenant) {
+        return directory.resolve(tenant + ".db");
+    }
+
+    /**
+     * The default mess followed by every mess database in the tenants directory, by id.
+     */
+    public List<String> tenants() throws IOException {
+        List<String> tenants = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.db")) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    String tenant = name.substring(0, name.length() - ".db".length());
+                    if (TENANT_ID.matcher(tenant).matches() && !tenant.equals(DEFAULT_TENANT)) {
+                        tenants.add(tenant);
+                    }
+                }
+            }
+        }
+        tenants.sort(null);
+        tenants.add(0, DEFAULT_TENANT);
+        return tenants;
+    }
+
+    public CompletableFuture<Lease> acquire(String tenant) {
+        if (DEFAULT_TENANT.equals(tenant)) {
+            return defaultName().thenApply(name ->
+                new Lease(null, DEFAULT_TENANT, name, MealService.getInstance(), MealManagerGUI.currentPool()));
+        }
+        return open(tenant, null, null);
+    }
+
+    /**
+     * Creates a mess with its own database. Its {@code admin} account gets the given password.
+     */
+    public CompletableFuture<Lease> create(String tenant, String name, String adminPassword) {
+        if (DEFAULT_TENANT.equals(tenant)) {
+            return invalid("The default mess already exists.");
+        }
+        if (name == null || name.isBlank() || adminPassword == null || adminPassword.isEmpty()) {
+            return invalid("A mess needs a name and an admin password.");
+        }
+        return open(tenant, name.trim(), adminPassword);
+    }
+
+    private synchronized CompletableFuture<String> defaultName() {
+        if (defaultName == null || defaultName.isCompletedExceptionally()) {
+            defaultName = MealRepository.getInstance().submit(conn -> messName(conn, DEFAULT_TENANT));
+        }
+        return defaultName;
+    }
+
+    private CompletableFuture<Lease> open(String tenant, String newName, String adminPassword) {
+        if (tenant == null || !TENANT_ID.matcher(tenant).matches()) {
+            return invalid("A mess id is 1 to 40 lowercase letters, digits, '-' or '_'.");
+        }
+        Shard shard;
+        synchronized (this) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("The tenant router is closed."));
+            }
+            shard = shards.get(tenant);
+            if (shard != null && newName != null) {
+                return invalid("A mess called " + tenant + " already exists.");
+            }
+            if (shard == null) {
+                shard = new Shard(tenant);
+                shards.put(tenant, shard);
+                Shard opening = shard;
+                closing.getOrDefault(tenant, CompletableFuture.completedFuture(null)).thenRunAsync(() -> {
+                    try {
+                        opening.open(newName, adminPassword);
+                        opening.ready.complete(null);
+                    } catch (Throwable t) {
+                        synchronized (this) {
+                            shards.remove(tenant, opening);
+                        }
+                        opening.ready.completeExceptionally(t);
+                    }
+                }, opener);
+            }
+            shard.leases++;
+        }
+        Shard leased = shard;
+        return shard.ready.handle((ready, error) -> {
+            if (error != null) {
+                release(leased);
+                throw new CompletionException(error);
+            }
+            if (getOpenShards() > MAX_OPEN) {
+                evictor.execute(this::evictIdle);
+            }
+            return new Lease(leased, tenant, leased.name, leased.service, leased.pool);
+        });
+    }
+
+    private synchronized void release(Shard shard) {
+        if (--shard.leases == 0) {
+            shard.idleSince = System.currentTimeMillis();
+            if (!closed && shards.size() > MAX_OPEN) {
+                evictor.execute(this::evictIdle);
+            }
+        }
+    }
+
+    /**
+     * Closes shards that have been idle too long, and then the longest-idle ones until no more
+     * than the limit are open.
+     */
+    private void evictIdle() {
+        List<Shard> evicted = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            List<Shard> idle = new ArrayList<>();
+            for (Shard shard : shards.values()) {
+                if (shard.leases == 0 && shard.ready.isDone() && !shard.ready.isCompletedExceptionally()) {
+                    idle.add(shard);
+                }
+            }
+            idle.sort(Comparator.comparingLong(shard -> shard.idleSince));
+            int open = shards.size();
+            for (Shard shard : idle) {
+                if (now - shard.idleSince >= IDLE_MILLIS || open > MAX_OPEN) {
+                    shards.remove(shard.tenant);
+                    closing.put(shard.tenant, new CompletableFuture<>());
+                    evicted.add(shard);
+                    open--;
+                }
+            }
+        }
+        for (Shard shard : evicted) {
+            try {
+                shard.close();
+            } finally {
+                CompletableFuture<Void> done;
+                synchronized (this) {
+                    done = closing.remove(shard.tenant);
+                }
+                done.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Every mess's current totals, read in parallel. A mess that cannot be opened is reported
+     * with its error instead of failing the rest.
+     */
+    public CompletableFuture<List<TenantSummary>> summaries() {
+        List<String> tenants;
+        try {
+            tenants = tenants();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        List<CompletableFuture<TenantSummary>> results = new ArrayList<>();
+        for (String tenant : tenants) {
+            results.add(acquire(tenant)
+                .thenCompose(lease -> lease.service().summary()
+                    .thenApply(summary -> new TenantSummary(tenant, lease.getName(), summary, null))
+                    .whenComplete((summary, error) -> lease.close()))
+                .exceptionally(error -> {
+                    Throwable cause = error.getCause() != null ? error.getCause() : error;
+                    return new TenantSummary(tenant, null, null, cause.getMessage());
+                }));
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<TenantSummary> summaries = new ArrayList<>(results.size());
+            for (CompletableFuture<TenantSummary> result : results) {
+                summaries.add(result.join());
+            }
+            return summaries;
+        });
+    }
+
+    public synchronized int getOpenShards() {
+        return shards.size();
+    }
+
+    /**
+     * Closes every open shard, writing out queued journal entries first. The default mess is
+     * left to its own shutdown hook.
+     */
+    @Override
+    public void close() {
+        List<Shard> open;
+        synchronized (this) {
+            closed = true;
+            open = new ArrayList<>(shards.values());
+            shards.clear();
+        }
+        evictor.shutdownNow();
+        for (Shard shard : open) {
+            shard.ready.whenComplete((ready, error) -> {
+                if (error == null) {
+                    shard.close();
+                }
+            });
+        }
+        opener.shutdown();
+    }
+
+    private static <T> CompletableFuture<T> invalid(String message) {
+        return CompletableFuture.failedFuture(new IllegalArgumentException(message));
+    }
+}
@@ -0,0 +1,13 @@
+abstract class User {
+    protected String username;
+
+    public User(String username) {
+        this.username = username;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public abstract String getRoleSpecificOptions();
+}